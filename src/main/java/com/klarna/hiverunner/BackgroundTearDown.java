@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tears down HiveServers and deletes their base dirs on background threads so that the next test method may start
+ * right away.
+ * <p/>
+ * The number of tear downs in flight is capped. Once the cap is reached, submitting another tear down blocks until one
+ * of them is done, which keeps a slow file system from piling up stopped HiveServers and base dirs. Failures are
+ * logged as they happen and summarized by {@link #drain()}.
+ */
+final class BackgroundTearDown {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundTearDown.class);
+
+    private final String name;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    BackgroundTearDown(final String name, int maxInFlight) {
+        Preconditions.checkArgument(maxInFlight > 0, "Max in flight tear downs must be positive: %s", maxInFlight);
+        this.name = name;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.executor = Executors.newFixedThreadPool(maxInFlight, new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "HiveRunner tear down " + name + "-"
+                        + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submit a tear down, blocking while the max number of tear downs are in flight.
+     *
+     * @param description Describes what is torn down in failure messages.
+     */
+    void submit(final String description, final Runnable tearDown) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting to tear down {}, tearing down on this thread", description);
+            run(description, tearDown);
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        BackgroundTearDown.this.run(description, tearDown);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for all submitted tear downs to finish and stop the background threads.
+     *
+     * @return The number of tear downs that failed.
+     */
+    int drain() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for tear downs of {} to finish", name);
+        }
+        int failed = failures.get();
+        if (failed > 0) {
+            LOGGER.warn("{} background tear downs of {} failed, see previous warnings", failed, name);
+        }
+        return failed;
+    }
+
+    private void run(String description, Runnable tearDown) {
+        try {
+            tearDown.run();
+        } catch (Throwable e) {
+            failures.incrementAndGet();
+            LOGGER.warn("Background tear down of " + description + " failed: " + e.getMessage(), e);
+        }
+    }
+}
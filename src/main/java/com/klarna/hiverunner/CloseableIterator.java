@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import java.util.Iterator;
+
+/**
+ * Iterator over a result that holds on to resources, e.g. an open hive operation. The iterator is closed automatically
+ * once it is drained, {@link #close()} releases the resources early.
+ */
+public interface CloseableIterator<T> extends Iterator<T>, AutoCloseable {
+
+    /**
+     * Release the resources held by this iterator. Closing an already closed iterator has no effect.
+     */
+    @Override
+    void close();
+}
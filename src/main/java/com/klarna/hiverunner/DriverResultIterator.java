@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Schema;
+import org.apache.hadoop.hive.ql.CommandNeedRetryException;
+import org.apache.hadoop.hive.ql.Driver;
+import org.apache.hadoop.hive.ql.processors.CommandProcessorResponse;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hive.service.cli.HiveSQLException;
+import org.apache.hive.service.cli.RowSet;
+import org.apache.hive.service.cli.RowSetFactory;
+import org.apache.hive.service.cli.TableSchema;
+import org.apache.hive.service.cli.thrift.TProtocolVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Executes a statement with a Driver of its own on the calling thread, bypassing the CLIService, and pages through its
+ * result.
+ * <p/>
+ * Rows are decoded the way the SQLOperation of HiveServer2 decodes them and passed through a RowSet of the session's
+ * protocol version, so they hold the same java types as rows fetched through the CLIService.
+ * <p/>
+ * The SessionState is attached to the calling thread while the Driver runs, fetches and closes, and detached again in
+ * between, the way HiveServer2 does for its handler threads.
+ */
+final class DriverResultIterator implements CloseableIterator<Object[]> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DriverResultIterator.class);
+
+    private final Driver driver;
+    private final SessionState sessionState;
+    private final Set<DriverResultIterator> openResults;
+    private final HiveConf conf;
+    private final String hiveql;
+    private final int fetchSize;
+    private final TProtocolVersion protocol;
+    private final TableSchema schema;
+    private StructObjectInspector stringRowInspector;
+    private LazySimpleSerDe stringRowSerDe;
+    private Iterator<Object[]> page = Collections.emptyIterator();
+    private int remaining;
+    private boolean closed;
+
+    /**
+     * Execute a statement in the given session. Returns once the statement has been executed. The result is in the
+     * given set of open results until it is closed.
+     */
+    static DriverResultIterator execute(SessionState sessionState, String hiveql, int fetchSize, int maxRows,
+                                        TProtocolVersion protocol, Set<DriverResultIterator> openResults) {
+        HiveConf conf = sessionState.getConf();
+        SessionState previousSessionState = attach(sessionState);
+        Driver driver = new Driver(conf);
+
+        // UDFs of jars added to the session are loaded by the session's class loader
+        Thread thread = Thread.currentThread();
+        ClassLoader previousClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(conf.getClassLoader());
+        boolean executed = false;
+        try {
+            CommandProcessorResponse response = driver.run(hiveql);
+            if (response.getResponseCode() != 0) {
+                HiveSQLException cause = new HiveSQLException(response.getErrorMessage(), response.getSQLState(),
+                        response.getResponseCode(), response.getException());
+                throw new IllegalArgumentException("Failed to executeQuery Hive query " + hiveql + ": "
+                        + cause.getMessage(), cause);
+            }
+            executed = true;
+        } catch (CommandNeedRetryException e) {
+            throw new IllegalArgumentException("Failed to executeQuery Hive query " + hiveql + ": " + e.getMessage(),
+                    e);
+        } finally {
+            thread.setContextClassLoader(previousClassLoader);
+            if (!executed) {
+                close(driver);
+            }
+            detach(previousSessionState);
+        }
+        return new DriverResultIterator(driver, sessionState, openResults, hiveql, fetchSize, maxRows, protocol);
+    }
+
+    private DriverResultIterator(Driver driver, SessionState sessionState, Set<DriverResultIterator> openResults,
+                                 String hiveql, int fetchSize, int maxRows, TProtocolVersion protocol) {
+        this.driver = driver;
+        this.sessionState = sessionState;
+        this.openResults = openResults;
+        this.conf = sessionState.getConf();
+        this.hiveql = hiveql;
+        this.fetchSize = fetchSize;
+        this.protocol = protocol;
+        this.remaining = maxRows;
+        openResults.add(this);
+
+        Schema resultSchema = driver.getSchema();
+        if (resultSchema != null && resultSchema.isSetFieldSchemas() && maxRows > 0) {
+            schema = new TableSchema(resultSchema);
+        } else {
+            schema = null;
+            close();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext() && !closed) {
+            RowSet rowSet;
+            try {
+                rowSet = fetch();
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            if (rowSet.numRows() == 0) {
+                close();
+            } else {
+                page = rowSet.iterator();
+            }
+        }
+        return page.hasNext() && !closed;
+    }
+
+    @Override
+    public Object[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        // Rows may be reused by the RowSet
+        Object[] row = page.next().clone();
+        if (--remaining == 0) {
+            close();
+        }
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            SessionState previousSessionState = attach(sessionState);
+            try {
+                close(driver);
+            } finally {
+                detach(previousSessionState);
+                openResults.remove(this);
+            }
+        }
+    }
+
+    private RowSet fetch() {
+        List<Object> rows = new ArrayList<>();
+        driver.setMaxRows(Math.min(fetchSize, remaining));
+        SessionState previousSessionState = attach(sessionState);
+        try {
+            driver.getResults(rows);
+        } catch (IOException | CommandNeedRetryException e) {
+            throw new IllegalArgumentException("Failed to fetch result of Hive query " + hiveql + ": "
+                    + e.getMessage(), e);
+        } finally {
+            detach(previousSessionState);
+        }
+
+        RowSet rowSet = RowSetFactory.create(schema, protocol);
+        if (driver.isFetchingTable()) {
+            // Formatted by the ThriftFormatter configured for HiveServer2 sessions
+            for (Object row : rows) {
+                rowSet.addRow((Object[]) row);
+            }
+        } else {
+            // Results of e.g. describe are read from a file as text
+            for (Object row : rows) {
+                rowSet.addRow(decode((String) row));
+            }
+        }
+        return rowSet;
+    }
+
+    private Object[] decode(String row) {
+        try {
+            if (stringRowSerDe == null) {
+                StringBuilder names = new StringBuilder();
+                StringBuilder types = new StringBuilder();
+                for (FieldSchema field : driver.getSchema().getFieldSchemas()) {
+                    if (names.length() > 0) {
+                        names.append(',');
+                        types.append(',');
+                    }
+                    names.append(field.getName());
+                    types.append(field.getType());
+                }
+                Properties properties = new Properties();
+                properties.setProperty(serdeConstants.LIST_COLUMNS, names.toString());
+                properties.setProperty(serdeConstants.LIST_COLUMN_TYPES, types.toString());
+                stringRowSerDe = new LazySimpleSerDe();
+                SerDeUtils.initializeSerDe(stringRowSerDe, conf, properties, null);
+                stringRowInspector = (StructObjectInspector) stringRowSerDe.getObjectInspector();
+            }
+
+            Object struct = stringRowSerDe.deserialize(new BytesWritable(row.getBytes(StandardCharsets.UTF_8)));
+            List<? extends StructField> fields = stringRowInspector.getAllStructFieldRefs();
+            Object[] decoded = new Object[fields.size()];
+            for (int i = 0; i < decoded.length; i++) {
+                StructField field = fields.get(i);
+                decoded[i] = SerDeUtils.toThriftPayload(stringRowInspector.getStructFieldData(struct, field),
+                        field.getFieldObjectInspector(), protocol.getValue());
+            }
+            return decoded;
+        } catch (SerDeException e) {
+            throw new IllegalArgumentException("Failed to decode result of Hive query " + hiveql + ": "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Make the given session the current session of this thread.
+     *
+     * @return The previous current session of this thread, or null.
+     */
+    private static SessionState attach(SessionState sessionState) {
+        SessionState previous = SessionState.get();
+        SessionState.setCurrentSessionState(sessionState);
+        return previous;
+    }
+
+    /**
+     * Restore the current session of this thread as it was before {@link #attach(SessionState)}.
+     */
+    private static void detach(SessionState previous) {
+        if (previous == null) {
+            SessionState.detachSession();
+        } else {
+            SessionState.setCurrentSessionState(previous);
+        }
+    }
+
+    private static void close(Driver driver) {
+        try {
+            driver.close();
+            driver.destroy();
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to close driver: " + e.getMessage() + ". Turn on log level debug for stacktrace");
+            LOGGER.debug(e.getMessage(), e);
+        }
+    }
+}
@@ -19,28 +19,68 @@ package com.klarna.hiverunner;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.klarna.hiverunner.result.ColumnarResult;
+import com.klarna.hiverunner.result.ColumnarResultBuilder;
+import com.klarna.hiverunner.sql.StatementAnalyzer;
+import com.klarna.hiverunner.sql.StatementDependencies;
 import com.klarna.hiverunner.sql.StatementsSplitter;
+import com.klarna.hiverunner.sql.TableAccess;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.MetaStoreUtils;
+import org.apache.hadoop.hive.ql.exec.FunctionInfo;
+import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
 import org.apache.hadoop.hive.ql.exec.tez.TezJobMonitor;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.Table;
 import org.apache.hadoop.hive.ql.parse.VariableSubstitution;
+import org.apache.hadoop.hive.ql.processors.HiveCommand;
 import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.hive.ql.udf.UDFType;
 import org.apache.hive.service.Service;
 import org.apache.hive.service.cli.CLIService;
+import org.apache.hive.service.cli.FetchOrientation;
+import org.apache.hive.service.cli.FetchType;
 import org.apache.hive.service.cli.HiveSQLException;
 import org.apache.hive.service.cli.OperationHandle;
+import org.apache.hive.service.cli.OperationStatus;
 import org.apache.hive.service.cli.RowSet;
 import org.apache.hive.service.cli.SessionHandle;
+import org.apache.hive.service.cli.TableSchema;
+import org.apache.hive.service.cli.thrift.TProtocolVersion;
 import org.apache.hive.service.server.HiveServer2;
 import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HiveServer wrapper
@@ -49,14 +89,108 @@ public class HiveServerContainer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HiveServerContainer.class);
 
+    /**
+     * Fetches the next page of results while the current page is consumed, see {@link #setResultPrefetchEnabled}.
+     */
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "HiveRunner result prefetch-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Functions marked deterministic that are constant within a query only, or that read something else than their
+     * arguments. unix_timestamp is only time dependent without arguments, but the arguments are not known here.
+     */
+    private static final Set<String> RUNTIME_CONSTANT_FUNCTIONS = new HashSet<>(Arrays.asList("current_date",
+            "current_timestamp", "unix_timestamp", "current_user", "current_database", "in_file"));
+
+    /**
+     * Interval between status polls of statements executed in the background.
+     */
+    private static final long STATUS_POLL_INTERVAL_MILLIS = 50;
+
+    /**
+     * Number of rows fetched per page by default, same as CLIService.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 100;
+
+    /**
+     * Max number of open operations per session by default.
+     */
+    public static final int DEFAULT_MAX_OPEN_OPERATIONS = 100;
+
     private CLIService client;
     private final HiveServerContext context;
+
+    /**
+     * Set for containers that only own a session on a HiveServer started by another container, see
+     * {@link #HiveServerContainer(HiveServerContainer, TemporaryFolder, String)} and
+     * {@link #newSession(Map, Map)}.
+     */
+    private final HiveServerContainer server;
+    private final TemporaryFolder sessionBaseDir;
+    private final String sessionDatabase;
+    private final boolean isolatedSession;
+
     private SessionHandle sessionHandle;
     private HiveServer2 hiveServer2;
     private SessionState currentSessionState;
+    private List<File> baseDirEntries;
+    private MetaStoreChangeTracker.Changes metaStoreChanges;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private boolean resultPrefetch = false;
+    private StatementAnalysisCache statementAnalysisCache = new StatementAnalysisCache();
+    private boolean driverExecution = false;
+    private int maxOpenOperations = DEFAULT_MAX_OPEN_OPERATIONS;
+    private final Set<OperationHandle> openOperations =
+            Collections.newSetFromMap(new ConcurrentHashMap<OperationHandle, Boolean>());
+    private final Set<DriverResultIterator> openDriverResults =
+            Collections.newSetFromMap(new ConcurrentHashMap<DriverResultIterator, Boolean>());
+    private ResultCache resultCache;
+    private final Map<OperationHandle, TableAccess> writingOperations = new ConcurrentHashMap<>();
 
     public HiveServerContainer(HiveServerContext context) {
         this.context = context;
+        this.server = null;
+        this.sessionBaseDir = null;
+        this.sessionDatabase = null;
+        this.isolatedSession = false;
+    }
+
+    /**
+     * Create a container that opens a session of its own on the already started HiveServer of another container.
+     * Several such containers may be used concurrently from different threads.
+     * <p/>
+     * Each session gets the given base dir as hadoop.tmp.dir and the given database, which is created when the session
+     * is opened, as current database. Tearing down the container drops the database and closes the session but leaves
+     * the HiveServer running.
+     */
+    public HiveServerContainer(HiveServerContainer server, TemporaryFolder baseDir, String database) {
+        this(server, baseDir, database, true);
+    }
+
+    private HiveServerContainer(HiveServerContainer server, TemporaryFolder baseDir, String database,
+                                boolean isolatedSession) {
+        Preconditions.checkArgument(server.isStarted(), "HiveServer was not started");
+        this.context = server.context;
+        this.server = server;
+        this.sessionBaseDir = baseDir;
+        this.sessionDatabase = database;
+        this.isolatedSession = isolatedSession;
+        this.hiveServer2 = server.hiveServer2;
+        this.client = server.client;
+        this.fetchSize = server.fetchSize;
+        this.resultPrefetch = server.resultPrefetch;
+        this.statementAnalysisCache = server.statementAnalysisCache;
+        this.driverExecution = server.driverExecution;
+        this.resultCache = server.resultCache;
+        this.maxOpenOperations = server.maxOpenOperations;
     }
 
     public CLIService getClient() {
@@ -64,22 +198,220 @@ public class HiveServerContainer {
     }
 
     /**
-     * Will start the HiveServer.
+     * Set the number of rows fetched from the HiveServer per page of a result.
+     */
+    public void setFetchSize(int fetchSize) {
+        Preconditions.checkArgument(fetchSize > 0, "Fetch size must be positive: %s", fetchSize);
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Fetch the next page of a result on a helper thread while the current page is consumed.
+     */
+    public void setResultPrefetchEnabled(boolean resultPrefetch) {
+        this.resultPrefetch = resultPrefetch;
+    }
+
+    /**
+     * Execute statements with a Driver of their own on the calling thread, on the SessionState of the current session,
+     * instead of as CLIService operations. This skips the operation handles, thrift row sets and thread hops of the
+     * CLIService for {@link #executeStatement(String)} and {@link #executeStatementStream(String)}. Commands like 'set'
+     * and 'add jar', asynchronous and columnar execution still go through the CLIService.
+     */
+    public void setDriverExecutionEnabled(boolean driverExecution) {
+        this.driverExecution = driverExecution;
+    }
+
+    /**
+     * Get the analyzer of the tables statements read and write, shared by the sessions of the HiveServer.
+     */
+    StatementAnalyzer getStatementAnalyzer() {
+        return statementAnalysisCache;
+    }
+
+    /**
+     * Cache the results of deterministic, read only queries executed with {@link #executeStatement(String)} until a
+     * statement writes one of the tables they read, see {@link ResultCache}. Data written to table locations by other
+     * means than statements or {@link HiveShell#insertInto(String, String)} is not noticed. Disabling the cache drops
+     * it.
+     */
+    public void setResultCacheEnabled(boolean resultCacheEnabled) {
+        if (!resultCacheEnabled) {
+            resultCache = null;
+        } else if (resultCache == null) {
+            resultCache = new ResultCache();
+        }
+    }
+
+    /**
+     * Get the result cache with its hit and miss counters, or null if the cache is not enabled.
+     */
+    @Nullable
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Drop the cached results reading the given table, e.g. after data was written to it without a statement.
+     */
+    public void invalidateResults(String databaseName, String tableName) {
+        if (resultCache != null) {
+            resultCache.invalidate(databaseName, tableName);
+        }
+    }
+
+    /**
+     * Analyze a statement for the result cache.
+     *
+     * @return The access of the statement if it writes anything, otherwise null.
+     */
+    private TableAccess analyzeWrites(String hiveql) {
+        TableAccess access = analyze(hiveql);
+        return access.isBarrier() || !access.getWrites().isEmpty() ? access : null;
+    }
+
+    private TableAccess analyze(String hiveql) {
+        return getStatementAnalyzer().analyze(expandVariableSubstitutes(hiveql),
+                currentSessionState.getCurrentDatabase());
+    }
+
+    /**
+     * Check if the result of a query only depends on the data of the tables it reads: it must read tables rather than
+     * views and call deterministic, stateless functions only, see {@link #RUNTIME_CONSTANT_FUNCTIONS}.
+     */
+    private boolean isCacheable(TableAccess access) {
+        if (!access.isQuery() || access.isBarrier() || !access.getWrites().isEmpty()) {
+            return false;
+        }
+        try {
+            for (String function : access.getFunctions()) {
+                if (RUNTIME_CONSTANT_FUNCTIONS.contains(function)) {
+                    return false;
+                }
+                FunctionInfo functionInfo = FunctionRegistry.getFunctionInfo(function);
+                if (functionInfo == null) {
+                    return false;
+                }
+                UDFType type = functionInfo.getFunctionClass().getAnnotation(UDFType.class);
+                if (type != null && (!type.deterministic() || type.stateful())) {
+                    return false;
+                }
+            }
+            Hive hive = Hive.get(getHiveConf());
+            for (String read : access.getReads()) {
+                String[] name = read.split("\\.", 2);
+                Table table = hive.getTable(name[0], name[1], false);
+                if (table == null || table.isView()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            LOGGER.debug("Not caching result, failed to analyze query: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Will start the HiveServer unless already started and open a new session to it.
      *
-     * @param testConfig Specific test case properties. Will be merged with the HiveConf of the context
+     * @param testConfig Specific test case properties. Will be merged with the HiveConf of the context if the
+     *                   HiveServer is started by this call. They are always applied to the new session.
      * @param hiveVars   HiveVars to pass on to the HiveServer for this session
      */
     public void init(Map<String, String> testConfig, Map<String, String> hiveVars) {
+        init(testConfig, hiveVars, null);
+    }
+
+    /**
+     * Will start the HiveServer with the given setup state restored and open a new session to it, see
+     * {@link #init(Map, Map)}.
+     *
+     * @param setupState Setup state to restore before the HiveServer is started, or null. The HiveServer must not
+     *                   already be started if a setup state is given.
+     */
+    public void init(Map<String, String> testConfig, Map<String, String> hiveVars,
+                     SetupStateCache.Entry setupState) {
+        Preconditions.checkState(setupState == null || !isStarted(),
+                "Setup state can not be restored into a started HiveServer");
+
+        if (!isStarted()) {
+            startHiveServer(testConfig, setupState);
+        }
+
+        if (server == null) {
+            openSession(testConfig, hiveVars);
+        } else {
+            Map<String, String> sessionConfig = new HashMap<>(testConfig);
+            if (isolatedSession) {
+                sessionConfig.put("hadoop.tmp.dir", newSessionFolder("hadooptmp").getAbsolutePath());
+            }
+            openSession(sessionConfig, hiveVars);
+
+            if (sessionDatabase != null) {
+                if (isolatedSession) {
+                    executeStatement("CREATE DATABASE IF NOT EXISTS `" + sessionDatabase + "`");
+                }
+                executeStatement("USE `" + sessionDatabase + "`");
+            }
+        }
+
+        // Ping hive server before we do anything more with it! If validation
+        // is switched on, this will fail if metastorage is not set up properly
+        pingHiveServer();
+    }
+
+    /**
+     * Open an additional session on the HiveServer of this container. The new session starts out with the
+     * hadoop.tmp.dir of this container and the database that is current in this container's session at the time of the
+     * call, overridden by the given session config, and the given hivevars. The returned container may be used from another thread than this container. Tearing it
+     * down closes the session only.
+     */
+    public HiveServerContainer newSession(Map<String, String> sessionConfig, Map<String, String> hiveVars) {
+        Preconditions.checkState(isStarted(), "HiveServer was not started");
+
+        Map<String, String> config = new HashMap<>();
+        config.put("hadoop.tmp.dir", getHiveConf().get("hadoop.tmp.dir"));
+        config.putAll(sessionConfig);
+
+        String database = currentSessionState == null ? sessionDatabase : currentSessionState.getCurrentDatabase();
+        HiveServerContainer session =
+                new HiveServerContainer(server == null ? this : server, getBaseDir(), database, false);
+        session.init(config, hiveVars);
+        return session;
+    }
+
+    /**
+     * Will start the HiveServer without opening a session to it. Use this to start a HiveServer that will be reused by
+     * several tests, see {@link #reset()}.
+     *
+     * @param serverConfig Properties that will be merged with the HiveConf of the context.
+     */
+    public void startHiveServer(Map<String, String> serverConfig) {
+        startHiveServer(serverConfig, null);
+    }
+
+    private void startHiveServer(Map<String, String> serverConfig, SetupStateCache.Entry setupState) {
+        Preconditions.checkState(!isStarted(), "HiveServer was already started");
 
         context.init();
 
         HiveConf hiveConf = context.getHiveConf();
 
         // merge test case properties with hive conf before HiveServer is started.
-        for (Map.Entry<String, String> property : testConfig.entrySet()) {
+        for (Map.Entry<String, String> property : serverConfig.entrySet()) {
             hiveConf.set(property.getKey(), property.getValue());
         }
 
+        // The metastore is connected, on this thread, when HiveServer2 is initialized so the state must be in place
+        // before that
+        if (setupState != null) {
+            setupState.restore(hiveConf, getBaseDir().getRoot());
+        }
+
+        // Track what the tests create from here on so that reset() can undo just that
+        metaStoreChanges = MetaStoreChangeTracker.track(hiveConf);
+
         try {
             hiveServer2 = new HiveServer2();
             hiveServer2.init(hiveConf);
@@ -92,67 +424,525 @@ public class HiveServerContainer {
             }
 
             Preconditions.checkNotNull(client, "ClIService was not initialized by HiveServer2");
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create HiveServer :" + e.getMessage(), e);
+        }
+
+        // Everything in the base dir at this point belongs to the HiveServer and is kept by reset()
+        baseDirEntries = Arrays.asList(listFiles(getBaseDir().getRoot()));
+    }
+
+    public boolean isStarted() {
+        return hiveServer2 != null;
+    }
 
-            sessionHandle = client.openSession("noUser", "noPassword", null);
+    private void openSession(Map<String, String> sessionConfig, Map<String, String> hiveVars) {
+        try {
+            sessionHandle = client.openSession("noUser", "noPassword", sessionConfig);
 
             SessionState sessionState = client.getSessionManager().getSession(sessionHandle).getSessionState();
             currentSessionState = sessionState;
             currentSessionState.setHiveVariables(hiveVars);
         } catch (Exception e) {
-            throw new IllegalStateException("Failed to create HiveServer :" + e.getMessage(), e);
+            throw new IllegalStateException("Failed to open HiveServer session :" + e.getMessage(), e);
         }
-
-        // Ping hive server before we do anything more with it! If validation
-        // is switched on, this will fail if metastorage is not set up properly
-        pingHiveServer();
     }
 
-
     public TemporaryFolder getBaseDir() {
-        return context.getBaseDir();
+        return sessionBaseDir == null ? context.getBaseDir() : sessionBaseDir;
     }
 
-    public List<Object[]> executeStatement(String hiveql) {
+    private File newSessionFolder(String folder) {
         try {
-            OperationHandle handle = client.executeStatement(sessionHandle, hiveql, new HashMap<String, String>());
-            List<Object[]> resultSet = new ArrayList<>();
-            if (handle.hasResultSet()) {
-
-                /*
-                fetchResults will by default return 100 rows per fetch (hive 14). For big result sets we need to
-                continuously fetch the result set until all rows are fetched.
-                */
-                RowSet rowSet;
-                while ((rowSet = client.fetchResults(handle)) != null && rowSet.numRows() > 0) {
-                    for (Object[] row : rowSet) {
-                        resultSet.add(row.clone());
+            File newFolder = sessionBaseDir.newFolder(folder);
+            FileUtil.setPermission(newFolder, FsPermission.getDirDefault());
+            return newFolder;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create session dir: " + e.getMessage(), e);
+        }
+    }
+
+    public List<Object[]> executeStatement(String hiveql) {
+        if (resultCache != null) {
+            return executeCachedStatement(hiveql);
+        }
+        return executeUncachedStatement(hiveql);
+    }
+
+    private List<Object[]> executeCachedStatement(String hiveql) {
+        TableAccess access = analyze(hiveql);
+        if (!access.isQuery() || !access.getWrites().isEmpty()) {
+            return executeUncachedStatement(hiveql);
+        }
+
+        // The session conf may change results, so results are not shared between sessions
+        String scope = currentSessionState.getSessionId() + "/" + currentSessionState.getCurrentDatabase();
+        String statement = expandVariableSubstitutes(hiveql);
+        ResultCache cache = resultCache;
+        List<Object[]> cached = cache.get(scope, statement);
+        if (cached != null) {
+            LOGGER.debug("Returning cached result of Hive query " + hiveql);
+            return cached;
+        }
+
+        long generation = cache.getGeneration();
+        List<Object[]> resultSet = executeUncachedStatement(hiveql);
+        if (isCacheable(access)) {
+            cache.put(scope, statement, access.getReads(), resultSet, generation);
+        }
+        return resultSet;
+    }
+
+    private List<Object[]> executeUncachedStatement(String hiveql) {
+        List<Object[]> resultSet = new ArrayList<>();
+        try (CloseableIterator<Object[]> rows = executeStatementStream(hiveql)) {
+            while (rows.hasNext()) {
+                resultSet.add(rows.next());
+            }
+        }
+
+        LOGGER.debug("ResultSet:\n" + Joiner.on("\n").join(Iterables.transform(resultSet,
+                new Function<Object[], String>() {
+                    @Nullable
+                    @Override
+                    public String apply(@Nullable Object[] objects) {
+                        return Joiner.on(", ").useForNull("null").join(objects);
                     }
-                }
+                })));
+
+        return resultSet;
+    }
+
+    /**
+     * Executes a statement and returns an iterator over its result. Rows are fetched from the HiveServer a page at a
+     * time as the iterator advances, so the whole result never has to fit in memory. The operation is held open until
+     * the iterator is closed.
+     */
+    public CloseableIterator<Object[]> executeStatementStream(String hiveql) {
+        return executeStatementStream(hiveql, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Executes a statement and returns an iterator over at most maxRows rows of its result, see
+     * {@link #executeStatementStream(String)}. No more rows than needed are fetched and the operation is closed as soon
+     * as the last of them has been returned, so the rest of the result is never transferred.
+     */
+    public CloseableIterator<Object[]> executeStatementStream(String hiveql, int maxRows) {
+        Preconditions.checkArgument(maxRows >= 0, "Max rows must not be negative: %s", maxRows);
+        if (driverExecution && HiveCommand.find(hiveql.trim().split("\\s+")) == null) {
+            return executeWithDriver(hiveql, maxRows);
+        }
+        return new ResultIterator(openOperation(hiveql, false), hiveql, maxRows);
+    }
+
+    /**
+     * Executes a statement and returns at most maxRows rows of its result, see
+     * {@link #executeStatementStream(String, int)}. Results are never taken from or put in the result cache.
+     */
+    public List<Object[]> executeStatement(String hiveql, int maxRows) {
+        List<Object[]> resultSet = new ArrayList<>();
+        try (CloseableIterator<Object[]> rows = executeStatementStream(hiveql, maxRows)) {
+            while (rows.hasNext()) {
+                resultSet.add(rows.next());
             }
+        }
+        return resultSet;
+    }
 
-            LOGGER.debug("ResultSet:\n" + Joiner.on("\n").join(Iterables.transform(resultSet,
-                    new Function<Object[], String>() {
-                        @Nullable
-                        @Override
-                        public String apply(@Nullable Object[] objects) {
-                            return Joiner.on(", ").useForNull("null").join(objects);
-                        }
-                    })));
+    /**
+     * Execute a statement with a Driver on this thread rather than as a CLIService operation, see
+     * {@link #setDriverExecutionEnabled(boolean)}.
+     */
+    private CloseableIterator<Object[]> executeWithDriver(String hiveql, int maxRows) {
+        checkOpenOperationLimit(hiveql);
+        TableAccess writes = resultCache == null ? null : analyzeWrites(hiveql);
+        if (writes != null) {
+            resultCache.invalidate(writes);
+        }
+        try {
+            TProtocolVersion protocol = client.getSessionManager().getSession(sessionHandle).getProtocolVersion();
+            return DriverResultIterator.execute(currentSessionState, hiveql, fetchSize, maxRows, protocol,
+                    openDriverResults);
+        } catch (HiveSQLException e) {
+            throw new IllegalStateException("Failed to get session: " + e.getMessage(), e);
+        } finally {
+            if (writes != null) {
+                resultCache.invalidate(writes);
+            }
+        }
+    }
 
-            return resultSet;
+    /**
+     * Executes a statement in the background and returns right away. The returned future polls the status of the
+     * operation and fetches the whole result once the statement has finished. Statements executed this way in the same
+     * session run concurrently, so that independent heavy statements may overlap their jobs.
+     * <p/>
+     * Failed statements make {@link Future#get()} throw an ExecutionException caused by the HiveSQLException of the
+     * operation. Cancelling the future cancels and closes the operation.
+     */
+    public Future<List<Object[]>> executeStatementAsync(String hiveql) {
+        return new StatementFuture(openOperation(hiveql, true), hiveql);
+    }
+
+    /**
+     * Execute a statement in the current session and track the operation until {@link #closeOperation} is called.
+     */
+    private OperationHandle openOperation(String hiveql, boolean async) {
+        checkOpenOperationLimit(hiveql);
+        // Results read by the statement are invalidated both before it starts and once it is closed, so that queries
+        // running alongside can't cache what they read in between
+        TableAccess writes = resultCache == null ? null : analyzeWrites(hiveql);
+        if (writes != null) {
+            resultCache.invalidate(writes);
+        }
+        try {
+            OperationHandle handle = async
+                    ? client.executeStatementAsync(sessionHandle, hiveql, new HashMap<String, String>())
+                    : client.executeStatement(sessionHandle, hiveql, new HashMap<String, String>());
+            openOperations.add(handle);
+            if (writes != null) {
+                writingOperations.put(handle, writes);
+            }
+            return handle;
         } catch (HiveSQLException e) {
+            if (writes != null) {
+                resultCache.invalidate(writes);
+            }
             throw new IllegalArgumentException("Failed to executeQuery Hive query " + hiveql + ": " + e.getMessage(),
                     e);
         }
     }
 
+    private void checkOpenOperationLimit(String hiveql) {
+        if (maxOpenOperations > 0 && getOpenOperationCount() >= maxOpenOperations) {
+            throw new IllegalStateException("Max " + maxOpenOperations + " open operations reached, make sure to "
+                    + "close result iterators. Failed to execute Hive query " + hiveql);
+        }
+    }
+
+    /**
+     * Close a tracked operation, releasing its result buffers and scratch files. Closing an already closed operation
+     * has no effect.
+     */
+    private void closeOperation(OperationHandle handle) {
+        TableAccess writes = writingOperations.remove(handle);
+        if (writes != null && resultCache != null) {
+            resultCache.invalidate(writes);
+        }
+        if (openOperations.remove(handle)) {
+            try {
+                client.closeOperation(handle);
+            } catch (Throwable e) {
+                LOGGER.warn("Failed to close operation: " + e.getMessage() + ". Turn on log level debug for stacktrace");
+                LOGGER.debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of operations that are open in the current session, e.g. by result iterators that are neither
+     * drained nor closed. Results of statements executed with a Driver count as operations.
+     */
+    public int getOpenOperationCount() {
+        return openOperations.size() + openDriverResults.size();
+    }
+
+    /**
+     * Set the max number of operations that may be open in the current session at once. A value less than 1 means
+     * no limit.
+     */
+    public void setMaxOpenOperations(int maxOpenOperations) {
+        this.maxOpenOperations = maxOpenOperations;
+    }
+
+    /**
+     * Executes a statement and returns its result column by column, see {@link ColumnarResult}. The operation is closed
+     * once the whole result has been fetched.
+     */
+    public ColumnarResult executeStatementColumnar(String hiveql) {
+        OperationHandle handle = openOperation(hiveql, false);
+        try {
+            if (!handle.hasResultSet()) {
+                return new ColumnarResultBuilder(new TableSchema()).build();
+            }
+            ColumnarResultBuilder result = new ColumnarResultBuilder(client.getResultSetMetadata(handle));
+            RowSet rowSet;
+            while ((rowSet = client.fetchResults(handle, FetchOrientation.FETCH_NEXT, fetchSize,
+                    FetchType.QUERY_OUTPUT)) != null && rowSet.numRows() > 0) {
+                result.append(rowSet);
+            }
+            return result.build();
+        } catch (HiveSQLException e) {
+            throw new IllegalArgumentException("Failed to fetch result of Hive query " + hiveql + ": "
+                    + e.getMessage(), e);
+        } finally {
+            closeOperation(handle);
+        }
+    }
+
+    /**
+     * Polls the status of an operation executed in the background and fetches its result once finished. The operation
+     * is closed as soon as the outcome is known.
+     */
+    private final class StatementFuture implements Future<List<Object[]>> {
+
+        private final OperationHandle handle;
+        private final String hiveql;
+        private boolean resolved;
+        private boolean cancelled;
+        private List<Object[]> result;
+        private ExecutionException failure;
+
+        private StatementFuture(OperationHandle handle, String hiveql) {
+            this.handle = handle;
+            this.hiveql = hiveql;
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone()) {
+                return false;
+            }
+            try {
+                client.cancelOperation(handle);
+            } catch (HiveSQLException e) {
+                LOGGER.warn("Failed to cancel Hive query " + hiveql + ": " + e.getMessage());
+                LOGGER.debug(e.getMessage(), e);
+            }
+            closeOperation(handle);
+            cancelled = true;
+            resolved = true;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            if (resolved) {
+                return true;
+            }
+            try {
+                return getStatus().getState().isTerminal();
+            } catch (HiveSQLException e) {
+                // The operation is gone, e.g. because the session was closed. get() reports the failure.
+                return true;
+            }
+        }
+
+        @Override
+        public List<Object[]> get() throws InterruptedException, ExecutionException {
+            while (!isDone()) {
+                Thread.sleep(STATUS_POLL_INTERVAL_MILLIS);
+            }
+            return outcome();
+        }
+
+        @Override
+        public List<Object[]> get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isDone()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Hive query " + hiveql + " did not finish within " + timeout + " "
+                            + unit);
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining,
+                        TimeUnit.MILLISECONDS.toNanos(STATUS_POLL_INTERVAL_MILLIS)));
+            }
+            return outcome();
+        }
+
+        private OperationStatus getStatus() throws HiveSQLException {
+            // Read the status straight from the operation, CLIService.getOperationStatus blocks while it is running
+            return client.getSessionManager().getOperationManager().getOperation(handle).getStatus();
+        }
+
+        private synchronized List<Object[]> outcome() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException("Hive query " + hiveql + " was cancelled");
+            }
+            if (!resolved) {
+                resolve();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+
+        private void resolve() {
+            try {
+                OperationStatus status = getStatus();
+                switch (status.getState()) {
+                    case FINISHED:
+                        List<Object[]> rows = new ArrayList<>();
+                        try (CloseableIterator<Object[]> iterator = new ResultIterator(handle, hiveql, Integer.MAX_VALUE)) {
+                            while (iterator.hasNext()) {
+                                rows.add(iterator.next());
+                            }
+                        }
+                        result = rows;
+                        break;
+                    case ERROR:
+                        failure = new ExecutionException("Failed to execute Hive query " + hiveql,
+                                status.getOperationException());
+                        break;
+                    default:
+                        failure = new ExecutionException(new IllegalStateException(
+                                "Hive query " + hiveql + " ended in state " + status.getState()));
+                }
+            } catch (HiveSQLException | RuntimeException e) {
+                failure = new ExecutionException("Failed to execute Hive query " + hiveql, e);
+            } finally {
+                closeOperation(handle);
+                resolved = true;
+            }
+        }
+    }
+
+    /**
+     * Pages through the result of an operation with fetchResults and closes the operation once the result is drained,
+     * a page fails to be fetched or the iterator is closed. With prefetch the next page is fetched on a helper thread while the current page is
+     * consumed.
+     */
+    private final class ResultIterator implements CloseableIterator<Object[]> {
+
+        private final OperationHandle handle;
+        private final String hiveql;
+        private final int fetchSize;
+        private final boolean prefetch;
+        private Iterator<Object[]> page = Collections.emptyIterator();
+        private Future<RowSet> nextPage;
+        private int remaining;
+        private boolean closed;
+
+        private ResultIterator(OperationHandle handle, String hiveql, int maxRows) {
+            this.handle = handle;
+            this.hiveql = hiveql;
+            this.fetchSize = HiveServerContainer.this.fetchSize;
+            this.prefetch = resultPrefetch;
+            this.remaining = maxRows;
+            if (!handle.hasResultSet() || maxRows == 0) {
+                close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !closed) {
+                RowSet rowSet;
+                try {
+                    rowSet = nextPage == null ? fetch(Math.min(fetchSize, remaining)) : awaitNextPage();
+                } catch (RuntimeException e) {
+                    // Don't leave the operation open for callers that catch the failure without closing the iterator
+                    close();
+                    throw e;
+                }
+                if (rowSet == null || rowSet.numRows() == 0) {
+                    close();
+                } else {
+                    page = rowSet.iterator();
+                    if (prefetch && remaining > rowSet.numRows()) {
+                        // Sized here since remaining is only ever touched by the thread iterating the result
+                        final int pageSize = Math.min(fetchSize, remaining - rowSet.numRows());
+                        nextPage = PREFETCH_EXECUTOR.submit(new Callable<RowSet>() {
+                            @Override
+                            public RowSet call() {
+                                return fetch(pageSize);
+                            }
+                        });
+                    }
+                }
+            }
+            return page.hasNext() && !closed;
+        }
+
+        @Override
+        public Object[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // Rows may be reused by the RowSet
+            Object[] row = page.next().clone();
+            if (--remaining == 0) {
+                close();
+            }
+            return row;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (nextPage != null) {
+                // The operation must not be closed while a page is being fetched from it
+                try {
+                    awaitNextPage();
+                } catch (Throwable e) {
+                    LOGGER.debug("Discarded failed prefetch: " + e.getMessage(), e);
+                }
+            }
+            closeOperation(handle);
+        }
+
+        private RowSet fetch(int pageSize) {
+            try {
+                return client.fetchResults(handle, FetchOrientation.FETCH_NEXT, pageSize, FetchType.QUERY_OUTPUT);
+            } catch (HiveSQLException e) {
+                throw new IllegalArgumentException("Failed to fetch result of Hive query " + hiveql + ": "
+                        + e.getMessage(), e);
+            }
+        }
+
+        private RowSet awaitNextPage() {
+            Future<RowSet> future = nextPage;
+            nextPage = null;
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause());
+                throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while fetching result of Hive query " + hiveql, e);
+            }
+        }
+    }
+
     /**
      * Executes a hive script.
      *
      * @param hiveql hive script statements.
      */
     public void executeScript(String hiveql) {
-        for (String statement : StatementsSplitter.splitStatements(hiveql)) {
+        executeScript(hiveql, 1);
+    }
+
+    /**
+     * Executes the statements of a script, running up to the given number of independent statements concurrently, see
+     * {@link StatementDependencies}. Statements that depend on each other are still executed in script order. A
+     * parallelism of 1 executes the statements one by one.
+     */
+    public void executeScript(String hiveql, int parallelism) {
+        List<String> statements = StatementsSplitter.splitStatements(hiveql);
+        if (parallelism > 1 && statements.size() > 1) {
+            new ParallelScriptExecutor(this, parallelism).execute(statements,
+                    currentSessionState.getCurrentDatabase());
+            return;
+        }
+        for (String statement : statements) {
             executeStatement(statement);
         }
     }
@@ -163,15 +953,105 @@ public class HiveServerContainer {
      * This call will never throw an exception as it makes no sense doing that in the tear down phase.
      */
     public void tearDown() {
+        if (!isStarted()) {
+            // Nothing to tear down, e.g. a lazily started shell that was never used
+            return;
+        }
+
+        if (server != null) {
+            tearDownSession();
+            return;
+        }
+
+        killRunningTezJobs();
+
+        resetCurrentDatabase();
 
+        closeSession();
 
+        try {
+            hiveServer2.stop();
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to stop HiveServer2: " + e.getMessage() + ". Turn on log level debug for stacktrace");
+            LOGGER.debug(e.getMessage(), e);
+        }
+
+        MetaStoreChangeTracker.untrack(hiveServer2.getHiveConf());
+        metaStoreChanges = null;
+
+        hiveServer2 = null;
+        client = null;
+
+        LOGGER.info("Tore down HiveServer instance");
+    }
+
+    /**
+     * Drops the session database of an isolated session and closes the session, leaving the shared HiveServer running.
+     * Tez jobs are left alone since they can't be told apart from the jobs of other sessions.
+     */
+    private void tearDownSession() {
+        if (sessionHandle != null && isolatedSession && sessionDatabase != null) {
+            resetCurrentDatabase();
+
+            try {
+                executeStatement("DROP DATABASE IF EXISTS `" + sessionDatabase + "` CASCADE");
+            } catch (Throwable e) {
+                LOGGER.warn("Failed to drop session database: " + e.getMessage() +
+                        ". Turn on log level debug for stacktrace");
+                LOGGER.debug(e.getMessage(), e);
+            }
+        }
+
+        if (sessionHandle != null) {
+            closeSession();
+        }
+
+        hiveServer2 = null;
+        client = null;
+
+        LOGGER.info("Closed HiveServer session");
+    }
+
+    /**
+     * Reset the HiveServer so that it may be reused by another test. Drops the databases and tables created since the
+     * HiveServer was started or last reset, drops the functions in those databases and in 'default', removes all files
+     * written to the base dir since the HiveServer was started and closes the current session. The HiveServer itself
+     * is left running.
+     * <p/>
+     * This call will never throw an exception as it makes no sense doing that in the tear down phase.
+     */
+    public void reset() {
+
+        killRunningTezJobs();
+
+        // The session is not opened if the test never started the shell
+        if (sessionHandle != null) {
+            resetCurrentDatabase();
+
+            undoMetaStoreChanges();
+
+            closeSession();
+        }
+
+        if (resultCache != null) {
+            resultCache.clear();
+        }
+
+        cleanBaseDir();
+
+        LOGGER.info("Reset HiveServer instance");
+    }
+
+    private void killRunningTezJobs() {
         try {
             TezJobMonitor.killRunningJobs();
         } catch (Throwable e) {
             LOGGER.warn("Failed to kill tez session: " + e.getMessage() + ". Turn on log level debug for stacktrace");
             LOGGER.debug(e.getMessage(), e);
         }
+    }
 
+    private void resetCurrentDatabase() {
         try {
             // Reset to default schema
             executeScript("USE default;");
@@ -180,6 +1060,75 @@ public class HiveServerContainer {
                     ". Turn on log level debug for stacktrace");
             LOGGER.debug(e.getMessage(), e);
         }
+    }
+
+    /**
+     * Drop the objects recorded by the {@link MetaStoreChangeTracker}. Falls back on dropping all objects should that
+     * fail, e.g. if the tracker has not been notified by the metastore.
+     */
+    private void undoMetaStoreChanges() {
+        if (metaStoreChanges == null) {
+            dropDatabaseObjects();
+            return;
+        }
+        try {
+            IMetaStoreClient metaStoreClient = Hive.get(getHiveConf()).getMSC();
+            Map<String, Set<String>> tables = metaStoreChanges.drainTables();
+            List<String> databases = metaStoreChanges.drainDatabases();
+
+            List<String> functionDatabases = new ArrayList<>(databases);
+            functionDatabases.add(MetaStoreUtils.DEFAULT_DATABASE_NAME);
+            for (String database : functionDatabases) {
+                // Dropped with hql rather than with the metastore client to also unregister them from the session
+                for (String function : metaStoreClient.getFunctions(database, "*")) {
+                    executeStatement("DROP FUNCTION IF EXISTS `" + database + "`.`" + function + "`");
+                }
+            }
+            for (Map.Entry<String, Set<String>> databaseTables : tables.entrySet()) {
+                if (!databases.contains(databaseTables.getKey())) {
+                    for (String table : databaseTables.getValue()) {
+                        metaStoreClient.dropTable(databaseTables.getKey(), table, true, true);
+                    }
+                }
+            }
+            for (String database : databases) {
+                metaStoreClient.dropDatabase(database, true, true, true);
+            }
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to drop tracked databases and tables, dropping all: " + e.getMessage() +
+                    ". Turn on log level debug for stacktrace");
+            LOGGER.debug(e.getMessage(), e);
+            dropDatabaseObjects();
+        }
+    }
+
+    private void dropDatabaseObjects() {
+        try {
+            IMetaStoreClient metaStoreClient = Hive.get(getHiveConf()).getMSC();
+            for (String database : metaStoreClient.getAllDatabases()) {
+                // Dropped with hql rather than with the metastore client to also unregister them from the session
+                for (String function : metaStoreClient.getFunctions(database, "*")) {
+                    executeStatement("DROP FUNCTION IF EXISTS `" + database + "`.`" + function + "`");
+                }
+                if (MetaStoreUtils.DEFAULT_DATABASE_NAME.equals(database)) {
+                    for (String table : metaStoreClient.getAllTables(database)) {
+                        metaStoreClient.dropTable(database, table, true, true);
+                    }
+                } else {
+                    metaStoreClient.dropDatabase(database, true, true, true);
+                }
+            }
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to drop databases: " + e.getMessage() + ". Turn on log level debug for stacktrace");
+            LOGGER.debug(e.getMessage(), e);
+        }
+    }
+
+    private void closeSession() {
+        // Drivers executing on behalf of the session are not known to it and must be closed while it is still open
+        for (DriverResultIterator driverResult : new ArrayList<>(openDriverResults)) {
+            driverResult.close();
+        }
 
         try {
             client.closeSession(sessionHandle);
@@ -189,18 +1138,55 @@ public class HiveServerContainer {
             LOGGER.debug(e.getMessage(), e);
         }
 
+        // Closing the session closes all of its operations
+        openOperations.clear();
+        for (TableAccess writes : writingOperations.values()) {
+            if (resultCache != null) {
+                resultCache.invalidate(writes);
+            }
+        }
+        writingOperations.clear();
+        sessionHandle = null;
+        currentSessionState = null;
+    }
+
+    private void cleanBaseDir() {
         try {
-            hiveServer2.stop();
+            for (File file : listTestDataFiles()) {
+                FileUtil.fullyDelete(file);
+            }
         } catch (Throwable e) {
-            LOGGER.warn("Failed to stop HiveServer2: " + e.getMessage() + ". Turn on log level debug for stacktrace");
+            LOGGER.warn("Failed to clean base dir: " + e.getMessage() + ". Turn on log level debug for stacktrace");
             LOGGER.debug(e.getMessage(), e);
         }
+    }
 
-        hiveServer2 = null;
-        client = null;
-        sessionHandle = null;
+    /**
+     * List the files written to the base dir since the HiveServer was started: new entries in the base dir and the
+     * contents of the warehouse and hadoop.tmp.dir, where test data is typically written.
+     */
+    List<File> listTestDataFiles() {
+        File root = getBaseDir().getRoot();
+        List<File> files = new ArrayList<>();
+        for (File file : listFiles(root)) {
+            if (!baseDirEntries.contains(file)) {
+                files.add(file);
+            }
+        }
 
-        LOGGER.info("Tore down HiveServer instance");
+        HiveConf serverConf = hiveServer2.getHiveConf();
+        for (String folder : Arrays.asList(serverConf.getVar(HiveConf.ConfVars.METASTOREWAREHOUSE),
+                serverConf.get("hadoop.tmp.dir"))) {
+            if (folder != null && new File(folder).getAbsolutePath().startsWith(root.getAbsolutePath())) {
+                files.addAll(Arrays.asList(listFiles(new File(folder))));
+            }
+        }
+        return files;
+    }
+
+    private static File[] listFiles(File folder) {
+        File[] files = folder.listFiles();
+        return files == null ? new File[0] : files;
     }
 
     public String expandVariableSubstitutes(String expression) {
@@ -211,7 +1197,47 @@ public class HiveServerContainer {
         executeStatement("SHOW TABLES");
     }
 
+    /**
+     * Checks that the HiveServer is started and responds to queries. The check is done in a session of its own,
+     * leaving the current session, if any, untouched.
+     * <p/>
+     * This call will never throw an exception.
+     */
+    public boolean isHealthy() {
+        if (!isStarted()) {
+            return false;
+        }
+        try {
+            Preconditions.checkState(getBaseDir().getRoot().isDirectory(), "Base dir was removed");
+
+            SessionHandle pingSessionHandle = client.openSession("noUser", "noPassword", null);
+            try {
+                OperationHandle handle = client.executeStatement(pingSessionHandle, "SHOW TABLES",
+                        new HashMap<String, String>());
+                client.closeOperation(handle);
+            } finally {
+                client.closeSession(pingSessionHandle);
+            }
+            return true;
+        } catch (Throwable e) {
+            LOGGER.warn("HiveServer failed health check: " + e.getMessage() +
+                    ". Turn on log level debug for stacktrace");
+            LOGGER.debug(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Get the HiveConf of the current session. Falls back on the HiveConf of the HiveServer if no session is open.
+     */
     public HiveConf getHiveConf() {
+        if (sessionHandle != null) {
+            try {
+                return client.getSessionManager().getSession(sessionHandle).getHiveConf();
+            } catch (HiveSQLException e) {
+                throw new IllegalStateException("Failed to get session: " + e.getMessage(), e);
+            }
+        }
         return hiveServer2.getHiveConf();
     }
 
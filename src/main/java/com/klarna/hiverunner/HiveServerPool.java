@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM wide pool of started HiveServers, used by {@link StandaloneHiveRunner} when running with
+ * {@link HiveServerScope#JVM}.
+ * <p/>
+ * HiveServers are pooled per set of hiveconf overrides in the {@link HiveRunnerConfig} since those are baked into the
+ * HiveServer when it is started. A HiveServer is reset when it is returned to the pool and health checked before it is
+ * leased again. The most recently returned HiveServer is leased first to keep the number of warm HiveServers down.
+ * <p/>
+ * The number of idle HiveServers kept by the pool is bounded by the max heap size unless configured explicitly, see
+ * {@link HiveRunnerConfig#getHiveServerPoolSize()}. The pool is sized by the config of the first lease; a different
+ * pool size in the config of a later test class is ignored with a warning. HiveServers returned to a full pool are torn
+ * down.
+ */
+public final class HiveServerPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HiveServerPool.class);
+
+    /**
+     * Rough estimate of the heap retained by an idle HiveServer including its metastore.
+     */
+    static final long ESTIMATED_HIVE_SERVER_HEAP_BYTES = 128L * 1024 * 1024;
+
+    static final int UNSIZED = -1;
+
+    private static final HiveServerPool INSTANCE = new HiveServerPool(UNSIZED);
+
+    private int maxIdle;
+    private int sizedByPoolSize;
+    private final Map<Map<String, String>, Deque<HiveServerContainer>> idle = new HashMap<>();
+    private final Map<HiveServerContainer, Map<String, String>> leased = new HashMap<>();
+    private int idleCount = 0;
+
+    /**
+     * @param maxIdle The max number of idle HiveServers, or {@link #UNSIZED} to size the pool from the config of the
+     *                first lease.
+     */
+    HiveServerPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+        this.sizedByPoolSize = HiveRunnerConfig.HIVE_SERVER_POOL_SIZE_DEFAULT;
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "HiveServerPool shutdown"));
+    }
+
+    public static HiveServerPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Lease a started HiveServer. Idle HiveServers started with the same hiveconf overrides are reused, otherwise a new
+     * HiveServer is started in a base dir of its own.
+     * <p/>
+     * The HiveServer should be returned with {@link #release(HiveServerContainer)} once the test is done.
+     */
+    public HiveServerContainer lease(HiveRunnerConfig config) {
+        size(config);
+        Map<String, String> key = new HashMap<>(config.getHiveConfSystemOverride());
+
+        HiveServerContainer container;
+        while ((container = pollIdle(key)) != null) {
+            if (container.isHealthy()) {
+                LOGGER.debug("Leasing pooled HiveServer in {}", container.getBaseDir().getRoot());
+                break;
+            }
+            HiveServers.tearDownAndDelete(container);
+        }
+
+        if (container == null) {
+            container = HiveServers.startInTemporaryFolder(config);
+        }
+
+        synchronized (this) {
+            leased.put(container, key);
+        }
+        return container;
+    }
+
+    /**
+     * Return a leased HiveServer to the pool. The HiveServer is reset and kept for future leases unless the pool is
+     * full, in which case it is torn down.
+     */
+    public void release(HiveServerContainer container) {
+        Map<String, String> key;
+        synchronized (this) {
+            key = leased.remove(container);
+        }
+        Preconditions.checkArgument(key != null, "HiveServer was not leased from this pool");
+
+        container.reset();
+
+        synchronized (this) {
+            if (idleCount < maxIdle) {
+                Deque<HiveServerContainer> containers = idle.get(key);
+                if (containers == null) {
+                    containers = new ArrayDeque<>();
+                    idle.put(key, containers);
+                }
+                containers.addFirst(container);
+                idleCount++;
+                return;
+            }
+        }
+
+        LOGGER.debug("HiveServer pool is full ({} idle HiveServers). Tearing down returned HiveServer.", maxIdle);
+        HiveServers.tearDownAndDelete(container);
+    }
+
+    /**
+     * Tear down all HiveServers held by the pool, both idle and leased.
+     */
+    public void close() {
+        List<HiveServerContainer> containers = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<HiveServerContainer> idleContainers : idle.values()) {
+                containers.addAll(idleContainers);
+            }
+            containers.addAll(leased.keySet());
+            idle.clear();
+            leased.clear();
+            idleCount = 0;
+        }
+        for (HiveServerContainer container : containers) {
+            HiveServers.tearDownAndDelete(container);
+        }
+    }
+
+    synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    private synchronized void size(HiveRunnerConfig config) {
+        int poolSize = config.getHiveServerPoolSize();
+        if (maxIdle == UNSIZED) {
+            maxIdle = maxIdleFromConfig(config);
+            sizedByPoolSize = poolSize;
+            LOGGER.debug("Sized HiveServer pool to {} idle HiveServers", maxIdle);
+        } else if (poolSize != sizedByPoolSize) {
+            LOGGER.warn("Ignoring {} {} since the JVM wide HiveServer pool was already sized to {} idle HiveServers",
+                    HiveRunnerConfig.HIVE_SERVER_POOL_SIZE_PROPERTY_NAME, poolSize, maxIdle);
+        }
+    }
+
+    private synchronized HiveServerContainer pollIdle(Map<String, String> key) {
+        Deque<HiveServerContainer> containers = idle.get(key);
+        if (containers == null || containers.isEmpty()) {
+            return null;
+        }
+        idleCount--;
+        return containers.pollFirst();
+    }
+
+    static int maxIdleFromConfig(HiveRunnerConfig config) {
+        int poolSize = config.getHiveServerPoolSize();
+        if (poolSize > 0) {
+            return poolSize;
+        }
+        // Allow pooled HiveServers to use a quarter of the heap
+        return (int) Math.max(1, Runtime.getRuntime().maxMemory() / 4 / ESTIMATED_HIVE_SERVER_HEAP_BYTES);
+    }
+}
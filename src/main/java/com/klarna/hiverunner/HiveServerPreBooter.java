@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Boots the HiveServer of the next test method on a background thread while the current test method executes.
+ * <p/>
+ * Only the parts of the boot that are isolated to the new HiveServer are done in the background: the base dir, the
+ * HiveConf, the metastore database and the HiveServer services. Initializing the services connects the metastore on
+ * the background thread; the thread local SessionState and metastore client this leaves behind are released before
+ * the HiveServer is handed over, see {@link HiveServers#startInTemporaryFolder(HiveRunnerConfig)}. Sessions are
+ * opened on the test thread once the HiveServer is taken. Test case properties are applied to the session.
+ */
+final class HiveServerPreBooter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HiveServerPreBooter.class);
+
+    private final HiveRunnerConfig config;
+    private final ExecutorService executor;
+    private Future<HiveServerContainer> next;
+    private int remainingTakes;
+
+    /**
+     * @param expectedTakes The number of HiveServers that are expected to be taken. No HiveServer is booted in the
+     *                      background once they have been taken, further HiveServers are booted on demand.
+     */
+    HiveServerPreBooter(HiveRunnerConfig config, final String name, int expectedTakes) {
+        this.config = config;
+        this.remainingTakes = expectedTakes;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "HiveServer pre boot " + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Take the pre booted HiveServer, waiting for its boot to finish if necessary, and start booting the next one.
+     * The caller owns the returned HiveServer and should tear it down with
+     * {@link HiveServers#tearDownAndDelete(HiveServerContainer)}.
+     */
+    synchronized HiveServerContainer take() {
+        Future<HiveServerContainer> current = next == null ? boot() : next;
+        next = --remainingTakes > 0 ? boot() : null;
+        try {
+            return current.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to pre boot HiveServer: " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for pre booted HiveServer", e);
+        }
+    }
+
+    /**
+     * Tear down the HiveServer booted for a test method that never came and stop the background thread.
+     */
+    synchronized void close() {
+        executor.shutdown();
+        if (next != null) {
+            try {
+                HiveServers.tearDownAndDelete(next.get());
+            } catch (ExecutionException e) {
+                LOGGER.debug("Discarded failed pre boot: " + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Interrupted while waiting for pre booted HiveServer, leaving it running");
+            }
+            next = null;
+        }
+    }
+
+    private Future<HiveServerContainer> boot() {
+        return executor.submit(new Callable<HiveServerContainer>() {
+            @Override
+            public HiveServerContainer call() {
+                return HiveServers.startInTemporaryFolder(config);
+            }
+        });
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+/**
+ * Controls the life span of the HiveServer that backs the {@link HiveShell} of a test case.
+ * <p/>
+ * Booting a HiveServer (and its metastore) is by far the most expensive part of a HiveRunner test. Reusing the server
+ * between test methods trades some isolation for speed: any state that lives outside the metastore and the test base
+ * dir (e.g. static state in hive itself) will survive between test methods.
+ */
+public enum HiveServerScope {
+
+    /**
+     * A new HiveServer is started for each test method and stopped once the test method is done.
+     */
+    METHOD,
+
+    /**
+     * One HiveServer is started per test class and stopped once all test methods of the class are done. Between test
+     * methods all databases but 'default' are dropped, all tables and functions in 'default' are dropped, the files
+     * written to the test base dir are removed and the session is reopened, which resets all hiveconf and hivevar
+     * values.
+     */
+    CLASS,
+
+    /**
+     * HiveServers are leased from a JVM wide pool, see {@link HiveServerPool}, and returned to it once the test method
+     * is done. Returned HiveServers are reset in the same way as for {@link #CLASS}. This lets test classes share
+     * HiveServers, at the cost of isolation between test classes.
+     */
+    JVM
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Starts and stops HiveServers that live outside of the life cycle of a single test method and therefore own their
+ * base dir.
+ */
+final class HiveServers {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HiveServers.class);
+
+    private HiveServers() {
+    }
+
+    /**
+     * Start a HiveServer in a new temporary base dir. Test case properties are not known at this point and will have
+     * to be applied per session.
+     * <p/>
+     * Initializing HiveServer2 starts a SessionState and connects a metastore client on the calling thread. Both are
+     * thread local and are released before returning, since the HiveServer will be used from other threads.
+     */
+    static HiveServerContainer startInTemporaryFolder(HiveRunnerConfig config) {
+        TemporaryFolder baseDir = new TemporaryFolder();
+        try {
+            baseDir.create();
+            FileUtil.setPermission(baseDir.getRoot(), FsPermission.getDirDefault());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create base dir: " + e.getMessage(), e);
+        }
+
+        HiveRunnerConfig serverConfig = new HiveRunnerConfig();
+        serverConfig.override(config);
+
+        LOGGER.info("Starting HiveServer in {}", baseDir.getRoot());
+        HiveServerContainer container = new HiveServerContainer(new StandaloneHiveServerContext(baseDir, serverConfig));
+        try {
+            container.startHiveServer(Collections.<String, String>emptyMap());
+        } catch (RuntimeException e) {
+            baseDir.delete();
+            throw e;
+        } finally {
+            Hive.closeCurrent();
+            SessionState.detachSession();
+        }
+        return container;
+    }
+
+    /**
+     * Tear down a HiveServer started by {@link #startInTemporaryFolder(HiveRunnerConfig)} and remove its base dir.
+     */
+    static void tearDownAndDelete(HiveServerContainer container) {
+        try {
+            container.tearDown();
+        } catch (Throwable e) {
+            LOGGER.warn("Tear down failed: " + e.getMessage(), e);
+        }
+        container.getBaseDir().delete();
+    }
+}
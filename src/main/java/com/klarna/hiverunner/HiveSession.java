@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+
+import java.util.List;
+
+/**
+ * Handle to an additional session on the hive server of a {@link HiveShell}, see {@link HiveShell#openSession()}.
+ * <p/>
+ * Each session has its own hiveconf and hivevar values and its own current database. Different sessions may be used
+ * concurrently from different threads, while each session executes one statement at a time. Sessions that are not
+ * closed by the test are closed when the test method is done.
+ */
+public interface HiveSession extends AutoCloseable {
+
+    /**
+     * Executes a single query.
+     * <p/>
+     * May only be called while the session is open.
+     *
+     * @return The query result split per line and column delimited by tab.
+     */
+    List<String> executeQuery(String hql);
+
+    /**
+     * Executes a single query.
+     * <p/>
+     * May only be called while the session is open.
+     *
+     * @return The query result split per line and column delimited by the given delimiter.
+     */
+    List<String> executeQuery(String hql, String rowValuesDelimitedBy, String replaceNullWith);
+
+    /**
+     * Executes a single query and returns the raw result set.
+     * <p/>
+     * May only be called while the session is open.
+     */
+    List<Object[]> executeStatement(String hql);
+
+    /**
+     * Executes a hive script with one or more statements.
+     * <p/>
+     * May only be called while the session is open.
+     */
+    void execute(String script);
+
+    /**
+     * Get the HiveConf of this session.
+     */
+    HiveConf getHiveConf();
+
+    /**
+     * Resolve all substituted variables with the hiveconf and hivevar values of this session.
+     */
+    String expandVariableSubstitutes(String expression);
+
+    /**
+     * Close the session. Closing an already closed session has no effect.
+     */
+    @Override
+    void close();
+}
@@ -17,6 +17,7 @@
 package com.klarna.hiverunner;
 
 import com.klarna.hiverunner.data.InsertIntoTable;
+import com.klarna.hiverunner.result.ColumnarResult;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.junit.rules.TemporaryFolder;
 
@@ -25,6 +26,8 @@ import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 
 /**
@@ -48,6 +51,14 @@ public interface HiveShell {
      */
     List<String> executeQuery(String hql, String rowValuesDelimitedBy, String replaceNullWith);
 
+    /**
+     * Executes a single query and returns at most maxRows rows of its result. Fetching stops and the query is closed
+     * once maxRows rows have been read, so the rest of the result is never transferred.
+     * <p/>
+     * May only be called post #start()
+     */
+    List<String> executeQuery(String hql, int maxRows);
+
     /**
      * Executes a single query from a script file, returning any results.
      * <p/>
@@ -111,6 +122,60 @@ public interface HiveShell {
      */
     List<Object[]> executeStatement(String hql);
 
+    /**
+     * Execute a single hive query and return at most maxRows rows of its result, see
+     * {@link #executeQuery(String, int)}.
+     * <p/>
+     * May only be called post #start()
+     */
+    List<Object[]> executeStatement(String hql, int maxRows);
+
+    /**
+     * Execute a single hive query and iterate over its result. Rows are fetched lazily as the iterator advances, so
+     * large results do not have to fit in memory. The iterator must be closed to release the query.
+     * <p/>
+     * May only be called post #start()
+     */
+    CloseableIterator<Object[]> executeStatementStream(String hql);
+
+    /**
+     * Execute a single hive query and iterate over at most maxRows rows of its result, see
+     * {@link #executeStatementStream(String)}. The query is closed as soon as the last of them has been returned.
+     * <p/>
+     * May only be called post #start()
+     */
+    CloseableIterator<Object[]> executeStatementStream(String hql, int maxRows);
+
+    /**
+     * Execute a single query and iterate over its result, see {@link #executeStatementStream(String)}.
+     * <p/>
+     * May only be called post #start()
+     */
+    CloseableIterator<String> executeQueryIterator(String hql);
+
+    /**
+     * Execute a single query and iterate over its result, see {@link #executeStatementStream(String)}.
+     * <p/>
+     * May only be called post #start()
+     */
+    CloseableIterator<String> executeQueryIterator(String hql, String rowValuesDelimitedBy, String replaceNullWith);
+
+    /**
+     * Execute a single hive query and get its result column by column in primitive arrays, without boxing or
+     * converting each value to a string.
+     * <p/>
+     * May only be called post #start()
+     */
+    ColumnarResult executeColumnarQuery(String hql);
+
+    /**
+     * Execute a single hive query in the background and return right away. Use this to run independent heavy
+     * statements concurrently, e.g. several CTAS into unrelated tables, and wait for them with {@link Future#get()}.
+     * <p/>
+     * May only be called post #start()
+     */
+    Future<List<Object[]>> executeAsync(String hql);
+
     /**
      * Executes a hive script. The script may contain multiple statements delimited by ';'
      * <p/>
@@ -154,6 +219,9 @@ public interface HiveShell {
      * when to start from the test case.
      * <p/>
      * This might be useful for test methods that needs additional setup not catered for with the provided annotations.
+     * <p/>
+     * With {@link com.klarna.hiverunner.config.HiveRunnerConfig#isLazyStartEnabled()} the actual start up is deferred
+     * until the shell is first used.
      */
     void start();
 
@@ -292,4 +360,21 @@ public interface HiveShell {
      */
     InsertIntoTable insertInto(String databaseName, String tableName);
 
+    /**
+     * Open an additional session on the hive server. The session starts out with the hiveconf and hivevar values that
+     * this shell was started with and the database that is current in this shell's session at the time of the call.
+     * <p/>
+     * May only be called post #start()
+     */
+    HiveSession openSession();
+
+    /**
+     * Open an additional session on the hive server. The session starts out with the hiveconf and hivevar values that
+     * this shell was started with, overridden by the given hiveconf and hivevar values, and the database that is current
+     * in this shell's session at the time of the call.
+     * <p/>
+     * May only be called post #start()
+     */
+    HiveSession openSession(Map<String, String> hiveConf, Map<String, String> hiveVars);
+
 }
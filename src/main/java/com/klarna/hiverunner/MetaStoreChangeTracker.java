@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.MetaStoreEventListener;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.events.AlterTableEvent;
+import org.apache.hadoop.hive.metastore.events.CreateDatabaseEvent;
+import org.apache.hadoop.hive.metastore.events.CreateTableEvent;
+import org.apache.hadoop.hive.metastore.events.DropDatabaseEvent;
+import org.apache.hadoop.hive.metastore.events.DropTableEvent;
+import org.apache.hadoop.hive.metastore.events.ListenerEvent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.METASTORECONNECTURLKEY;
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.METASTORE_EVENT_LISTENERS;
+
+/**
+ * Metastore event listener recording the databases and tables created, or renamed, in the metastore of a HiveServer,
+ * so that a reused HiveServer can be reset by dropping only those, see {@link HiveServerContainer#reset()}.
+ * <p/>
+ * The listener is instantiated by the metastore, once per metastore handler, so the changes are kept per metastore
+ * database in a static registry keyed by the metastore connection url. Functions are not reported to listeners by this
+ * version of Hive and are looked up at reset.
+ */
+public class MetaStoreChangeTracker extends MetaStoreEventListener {
+
+    private static final ConcurrentMap<String, Changes> CHANGES = new ConcurrentHashMap<>();
+
+    public MetaStoreChangeTracker(Configuration config) {
+        super(config);
+    }
+
+    /**
+     * Register the listener in the given HiveConf and start tracking the changes made to its metastore. Must be called
+     * before the metastore is connected.
+     */
+    static Changes track(HiveConf conf) {
+        String listeners = conf.getVar(METASTORE_EVENT_LISTENERS).trim();
+        String listener = MetaStoreChangeTracker.class.getName();
+        if (!listeners.contains(listener)) {
+            conf.setVar(METASTORE_EVENT_LISTENERS, listeners.isEmpty() ? listener : listeners + "," + listener);
+        }
+
+        Changes changes = new Changes();
+        CHANGES.put(conf.getVar(METASTORECONNECTURLKEY), changes);
+        return changes;
+    }
+
+    /**
+     * Stop tracking the changes made to the metastore of the given HiveConf.
+     */
+    static void untrack(HiveConf conf) {
+        CHANGES.remove(conf.getVar(METASTORECONNECTURLKEY));
+    }
+
+    @Override
+    public void onCreateDatabase(CreateDatabaseEvent event) throws MetaException {
+        Changes changes = getChanges(event);
+        if (changes != null && event.getStatus()) {
+            changes.databaseCreated(event.getDatabase().getName());
+        }
+    }
+
+    @Override
+    public void onDropDatabase(DropDatabaseEvent event) throws MetaException {
+        Changes changes = getChanges(event);
+        if (changes != null && event.getStatus()) {
+            changes.databaseDropped(event.getDatabase().getName());
+        }
+    }
+
+    @Override
+    public void onCreateTable(CreateTableEvent event) throws MetaException {
+        Changes changes = getChanges(event);
+        if (changes != null && event.getStatus()) {
+            changes.tableCreated(event.getTable().getDbName(), event.getTable().getTableName());
+        }
+    }
+
+    @Override
+    public void onDropTable(DropTableEvent event) throws MetaException {
+        Changes changes = getChanges(event);
+        if (changes != null && event.getStatus()) {
+            changes.tableDropped(event.getTable().getDbName(), event.getTable().getTableName());
+        }
+    }
+
+    @Override
+    public void onAlterTable(AlterTableEvent event) throws MetaException {
+        Changes changes = getChanges(event);
+        if (changes != null && event.getStatus()) {
+            Table oldTable = event.getOldTable();
+            Table newTable = event.getNewTable();
+            if (!oldTable.getDbName().equalsIgnoreCase(newTable.getDbName())
+                    || !oldTable.getTableName().equalsIgnoreCase(newTable.getTableName())) {
+                changes.tableDropped(oldTable.getDbName(), oldTable.getTableName());
+                changes.tableCreated(newTable.getDbName(), newTable.getTableName());
+            }
+        }
+    }
+
+    private static Changes getChanges(ListenerEvent event) {
+        return CHANGES.get(HiveConf.getVar(event.getHandler().getConf(), METASTORECONNECTURLKEY));
+    }
+
+    /**
+     * Databases and tables created in a metastore and not yet dropped. Names are lower case, as stored by the
+     * metastore.
+     */
+    static final class Changes {
+
+        private final Set<String> databases = new LinkedHashSet<>();
+        private final Map<String, Set<String>> tables = new LinkedHashMap<>();
+
+        synchronized void databaseCreated(String database) {
+            databases.add(database.toLowerCase());
+        }
+
+        synchronized void databaseDropped(String database) {
+            databases.remove(database.toLowerCase());
+            tables.remove(database.toLowerCase());
+        }
+
+        synchronized void tableCreated(String database, String table) {
+            Set<String> databaseTables = tables.get(database.toLowerCase());
+            if (databaseTables == null) {
+                databaseTables = new LinkedHashSet<>();
+                tables.put(database.toLowerCase(), databaseTables);
+            }
+            databaseTables.add(table.toLowerCase());
+        }
+
+        synchronized void tableDropped(String database, String table) {
+            Set<String> databaseTables = tables.get(database.toLowerCase());
+            if (databaseTables != null) {
+                databaseTables.remove(table.toLowerCase());
+            }
+        }
+
+        /**
+         * Get the created databases and start over with an empty set.
+         */
+        synchronized List<String> drainDatabases() {
+            List<String> drained = new ArrayList<>(databases);
+            databases.clear();
+            return drained;
+        }
+
+        /**
+         * Get the created tables by database and start over with an empty set.
+         */
+        synchronized Map<String, Set<String>> drainTables() {
+            Map<String, Set<String>> drained = new LinkedHashMap<>(tables);
+            tables.clear();
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.MetaStoreUtils;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Function;
+import org.apache.hadoop.hive.metastore.api.FunctionType;
+import org.apache.hadoop.hive.metastore.api.Order;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.PrincipalType;
+import org.apache.hadoop.hive.metastore.api.ResourceUri;
+import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.ql.io.HiveIgnoreKeyTextOutputFormat;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.*;
+
+/**
+ * Pre-built metastore schema that is cloned into the in memory HSQLDB database of each HiveServer.
+ * <p/>
+ * Letting DataNucleus create and validate the metastore schema from scratch is a major part of the HiveServer boot
+ * time. Instead the schema is created once per JVM and metastore configuration in a template database by exercising
+ * the metastore (databases, partitioned tables and functions), captured with the HSQLDB SCRIPT statement and replayed
+ * as plain DDL into each new database. The 'default' database is removed from the template since its location
+ * differs between HiveServers; the metastore recreates it on start up.
+ * <p/>
+ * Templates are built from the configuration of the HiveServer that first asks for them and are keyed by its
+ * 'datanucleus.', 'javax.jdo.' and 'hive.metastore.' settings, so HiveServers with overridden metastore settings get
+ * a schema created with those settings.
+ * <p/>
+ * Should the template fail to build, HiveServers fall back to schema auto creation.
+ */
+final class MetaStoreTemplate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetaStoreTemplate.class);
+
+    private static final String TEMPLATE_DATABASE = "hiverunner_template";
+    private static final String TEMPLATE_TABLE = "template_table";
+    private static final String TEMPLATE_FUNCTION = "template_function";
+
+    private static final String[] METASTORE_PREFIXES = {"datanucleus.", "javax.jdo.", "hive.metastore."};
+
+    /**
+     * Settings that differ between HiveServers or are set by the template itself.
+     */
+    private static final List<String> UNKEYED_SETTINGS = Arrays.asList(METASTORECONNECTURLKEY.varname,
+            METASTOREWAREHOUSE.varname, METASTOREURIS.varname, METASTORE_VALIDATE_CONSTRAINTS.varname,
+            METASTORE_VALIDATE_COLUMNS.varname, METASTORE_VALIDATE_TABLES.varname);
+
+    private static final ConcurrentMap<Map<String, String>, MetaStoreTemplate> INSTANCES = new ConcurrentHashMap<>();
+
+    private final List<String> statements;
+
+    MetaStoreTemplate(List<String> statements) {
+        this.statements = Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * Get the template for the metastore settings of the given configuration, building it on first access. Returns
+     * null if the template could not be built.
+     */
+    static MetaStoreTemplate getInstance(HiveConf conf) {
+        Map<String, String> key = metaStoreSettings(conf);
+        MetaStoreTemplate template = INSTANCES.get(key);
+        if (template == null) {
+            synchronized (INSTANCES) {
+                template = INSTANCES.get(key);
+                if (template == null) {
+                    template = build(conf);
+                    INSTANCES.put(key, template);
+                }
+            }
+        }
+        return template.statements.isEmpty() ? null : template;
+    }
+
+    static Map<String, String> metaStoreSettings(HiveConf conf) {
+        Map<String, String> settings = new TreeMap<>();
+        for (Map.Entry<String, String> entry : conf) {
+            if (isMetaStoreSetting(entry.getKey()) && !UNKEYED_SETTINGS.contains(entry.getKey())) {
+                settings.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return settings;
+    }
+
+    private static boolean isMetaStoreSetting(String key) {
+        for (String prefix : METASTORE_PREFIXES) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    List<String> getStatements() {
+        return statements;
+    }
+
+    /**
+     * Replay the template schema into a new, empty, database. The given credentials become the admin credentials of
+     * the new database and must be the ones the metastore connects with.
+     */
+    void cloneInto(String url, String user, String password) {
+        long start = System.currentTimeMillis();
+        try (Connection connection = DriverManager.getConnection(url + ";create=true", user, password);
+             Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.addBatch(sql);
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to clone metastore template into " + url + ": " + e.getMessage(), e);
+        }
+        LOGGER.debug("Cloned metastore template into {} in {} ms", url, System.currentTimeMillis() - start);
+    }
+
+    private static MetaStoreTemplate build(final HiveConf contextConf) {
+        final AtomicReference<List<String>> statements = new AtomicReference<>();
+        // Build on a thread of its own to keep the thread local metastore state away from the test threads
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    statements.set(createTemplate(contextConf));
+                } catch (Throwable e) {
+                    LOGGER.warn("Failed to build metastore template, falling back to schema auto creation: "
+                            + e.getMessage(), e);
+                }
+            }
+        }, "HiveRunner metastore template");
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building metastore template", e);
+        }
+        List<String> result = statements.get();
+        return new MetaStoreTemplate(result == null ? Collections.<String>emptyList() : result);
+    }
+
+    private static List<String> createTemplate(HiveConf contextConf) throws Exception {
+        long start = System.currentTimeMillis();
+        File warehouse = Files.createTempDirectory("hiverunner_template").toFile();
+        String url = "jdbc:hsqldb:mem:hiverunner_template_" + UUID.randomUUID().toString();
+        try {
+            HiveConf conf = new HiveConf(contextConf);
+            conf.set("javax.jdo.option.ConnectionDriverName", JDBCDriver.class.getName());
+            conf.set("datanucleus.connectiondrivername", JDBCDriver.class.getName());
+            conf.setVar(METASTORECONNECTURLKEY, url + ";create=true");
+            conf.setVar(METASTOREWAREHOUSE, warehouse.getAbsolutePath());
+            conf.setVar(METASTOREURIS, "");
+            conf.setBoolVar(METASTORE_VALIDATE_CONSTRAINTS, true);
+            conf.setBoolVar(METASTORE_VALIDATE_COLUMNS, true);
+            conf.setBoolVar(METASTORE_VALIDATE_TABLES, true);
+
+            exerciseMetaStore(conf, warehouse);
+
+            try (Connection connection = DriverManager.getConnection(url, conf.getVar(METASTORE_CONNECTION_USER_NAME),
+                    conf.getVar(METASTOREPWD))) {
+                dropDefaultDatabase(connection);
+                List<String> statements = script(connection);
+                LOGGER.info("Built metastore template of {} statements in {} ms", statements.size(),
+                        System.currentTimeMillis() - start);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SHUTDOWN");
+                }
+                return statements;
+            }
+        } finally {
+            FileUtil.fullyDelete(warehouse);
+        }
+    }
+
+    /**
+     * Let DataNucleus create the tables backing the most commonly used parts of the metastore.
+     */
+    private static void exerciseMetaStore(HiveConf conf, File warehouse) throws Exception {
+        HiveMetaStoreClient client = new HiveMetaStoreClient(conf);
+        try {
+            client.createDatabase(new Database(TEMPLATE_DATABASE, null,
+                    new File(warehouse, TEMPLATE_DATABASE).getAbsolutePath(), new HashMap<String, String>()));
+
+            StorageDescriptor sd = new StorageDescriptor();
+            sd.setCols(Arrays.asList(new FieldSchema("value", "string", null)));
+            sd.setLocation(new File(warehouse, TEMPLATE_TABLE).getAbsolutePath());
+            sd.setInputFormat(TextInputFormat.class.getName());
+            sd.setOutputFormat(HiveIgnoreKeyTextOutputFormat.class.getName());
+            sd.setSerdeInfo(new SerDeInfo(null, LazySimpleSerDe.class.getName(), new HashMap<String, String>()));
+            sd.setBucketCols(new ArrayList<String>());
+            sd.setSortCols(new ArrayList<Order>());
+            sd.setParameters(new HashMap<String, String>());
+
+            Table table = new Table();
+            table.setDbName(TEMPLATE_DATABASE);
+            table.setTableName(TEMPLATE_TABLE);
+            table.setSd(sd);
+            table.setPartitionKeys(Arrays.asList(new FieldSchema("key", "string", null)));
+            table.setParameters(new HashMap<String, String>());
+            client.createTable(table);
+
+            Partition partition = new Partition();
+            partition.setDbName(TEMPLATE_DATABASE);
+            partition.setTableName(TEMPLATE_TABLE);
+            partition.setValues(Arrays.asList("a"));
+            partition.setSd(new StorageDescriptor(sd));
+            partition.getSd().setLocation(new File(sd.getLocation(), "key=a").getAbsolutePath());
+            partition.setParameters(new HashMap<String, String>());
+            client.add_partition(partition);
+
+            client.createFunction(new Function(TEMPLATE_FUNCTION, TEMPLATE_DATABASE, "template.Function", "noUser",
+                    PrincipalType.USER, 0, FunctionType.JAVA, new ArrayList<ResourceUri>()));
+
+            client.dropFunction(TEMPLATE_DATABASE, TEMPLATE_FUNCTION);
+            client.dropTable(TEMPLATE_DATABASE, TEMPLATE_TABLE, true, true);
+            client.dropDatabase(TEMPLATE_DATABASE, true, true, true);
+        } finally {
+            client.close();
+        }
+    }
+
+    private static void dropDefaultDatabase(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            String defaultDbIds = "SELECT DB_ID FROM DBS WHERE NAME = '" + MetaStoreUtils.DEFAULT_DATABASE_NAME + "'";
+            statement.executeUpdate("DELETE FROM DATABASE_PARAMS WHERE DB_ID IN (" + defaultDbIds + ")");
+            statement.executeUpdate("DELETE FROM DBS WHERE NAME = '" + MetaStoreUtils.DEFAULT_DATABASE_NAME + "'");
+        }
+    }
+
+    /**
+     * Capture the DDL and rows of the PUBLIC schema. Users, settings and system schemas are left out since they are
+     * created along with each new database.
+     */
+    static List<String> script(Connection connection) throws SQLException {
+        List<String> statements = new ArrayList<>();
+        String schema = "PUBLIC";
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SCRIPT")) {
+            while (resultSet.next()) {
+                String sql = resultSet.getString(1);
+                if (sql.startsWith("SET SCHEMA ")) {
+                    schema = sql.substring("SET SCHEMA ".length()).trim();
+                } else if (isPublicSchemaDefinition(sql) || (sql.startsWith("INSERT INTO ") && "PUBLIC".equals(schema))) {
+                    statements.add(sql);
+                }
+            }
+        }
+        Preconditions.checkState(!statements.isEmpty(), "Metastore template is empty");
+        return statements;
+    }
+
+    private static boolean isPublicSchemaDefinition(String sql) {
+        return (sql.startsWith("CREATE ") || sql.startsWith("ALTER "))
+                && !sql.startsWith("CREATE USER ")
+                && !sql.startsWith("CREATE SCHEMA ")
+                && sql.contains(" PUBLIC.");
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import com.klarna.hiverunner.sql.StatementDependencies;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Executes the statements of a script in the background, running independent statements concurrently and dependent
+ * statements in script order, see {@link StatementDependencies}.
+ * <p/>
+ * All statements are executed in the current session of the container, so session state like the current database
+ * carries over from one statement to the next just like when the statements are executed one by one. Once a statement
+ * fails no more statements are started, the running ones are awaited and the failure is thrown.
+ */
+final class ParallelScriptExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelScriptExecutor.class);
+
+    private static final long POLL_INTERVAL_MILLIS = 20;
+
+    private final HiveServerContainer container;
+    private final int parallelism;
+
+    ParallelScriptExecutor(HiveServerContainer container, int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive: %s", parallelism);
+        this.container = container;
+        this.parallelism = parallelism;
+    }
+
+    void execute(List<String> statements, String currentDatabase) {
+        List<String> expanded = new ArrayList<>();
+        for (String statement : statements) {
+            expanded.add(container.expandVariableSubstitutes(statement));
+        }
+        List<Set<Integer>> dependencies = StatementDependencies.dependencies(expanded, currentDatabase,
+                container.getStatementAnalyzer());
+
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < statements.size(); i++) {
+            pending.add(i);
+        }
+        Map<Integer, Future<List<Object[]>>> running = new LinkedHashMap<>();
+        Set<Integer> done = new HashSet<>();
+        RuntimeException failure = null;
+
+        while (!pending.isEmpty() || !running.isEmpty()) {
+            if (failure == null) {
+                failure = start(statements, dependencies, pending, running, done);
+            }
+            if (failure != null && running.isEmpty()) {
+                break;
+            }
+
+            boolean progress = false;
+            for (Iterator<Map.Entry<Integer, Future<List<Object[]>>>> it = running.entrySet().iterator();
+                 it.hasNext(); ) {
+                Map.Entry<Integer, Future<List<Object[]>>> entry = it.next();
+                if (entry.getValue().isDone()) {
+                    it.remove();
+                    done.add(entry.getKey());
+                    progress = true;
+                    RuntimeException statementFailure = await(statements.get(entry.getKey()), entry.getValue());
+                    if (failure == null) {
+                        failure = statementFailure;
+                    }
+                }
+            }
+            if (!progress) {
+                sleep();
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Start the pending statements whose dependencies are done, as long as there is room.
+     *
+     * @return The failure to start a statement, if any.
+     */
+    private RuntimeException start(List<String> statements, List<Set<Integer>> dependencies, List<Integer> pending,
+                                   Map<Integer, Future<List<Object[]>>> running, Set<Integer> done) {
+        for (Iterator<Integer> it = pending.iterator(); it.hasNext() && running.size() < parallelism; ) {
+            Integer index = it.next();
+            if (done.containsAll(dependencies.get(index))) {
+                it.remove();
+                LOGGER.debug("Executing statement {} of {} in the background", index + 1, statements.size());
+                try {
+                    running.put(index, container.executeStatementAsync(statements.get(index)));
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static RuntimeException await(String statement, Future<List<Object[]>> future) {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            return new IllegalArgumentException("Failed to executeQuery Hive query " + statement + ": "
+                    + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new IllegalStateException("Interrupted while executing Hive query " + statement, e);
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while executing script", e);
+        }
+    }
+}
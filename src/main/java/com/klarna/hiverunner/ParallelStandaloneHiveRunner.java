@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.google.common.base.Predicates;
+import com.klarna.hiverunner.annotations.HiveRunnerSetup;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import com.klarna.reflection.ReflectionUtils;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.reflections.ReflectionUtils.withAnnotation;
+import static org.reflections.ReflectionUtils.withType;
+
+/**
+ * JUnit 4 runner that runs the test methods of a test class concurrently on one HiveServer residing in this JVM.
+ * <p/>
+ * Each test method gets a session of its own on the shared HiveServer, with its own hiveconf and hivevar values, its
+ * own base dir (set as hadoop.tmp.dir) and a database of its own that is created and set as current database before
+ * the setup scripts are executed. The database is dropped once the test method is done. Tables referenced with an
+ * explicit database, e.g. 'default', are shared by all test methods so test methods must not rely on the same table
+ * names in such databases.
+ * <p/>
+ * The number of concurrently executing test methods is configured by
+ * {@link HiveRunnerConfig#getParallelism()}. The config must be set in a <b>static</b> field annotated with
+ * {@link HiveRunnerSetup} since it is read before any test method is executed. The {@link HiveServerScope} does not
+ * apply to this runner.
+ */
+public class ParallelStandaloneHiveRunner extends StandaloneHiveRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelStandaloneHiveRunner.class);
+
+    private final AtomicInteger sessionCounter = new AtomicInteger();
+    private HiveServerContainer sharedHiveServerContainer;
+
+    public ParallelStandaloneHiveRunner(Class<?> clazz) throws InitializationError {
+        super(clazz);
+
+        HiveRunnerConfig config = getConfig();
+        Set<Field> fields = ReflectionUtils.getAllFields(clazz,
+                Predicates.and(withAnnotation(HiveRunnerSetup.class), withType(HiveRunnerConfig.class)));
+        for (Field field : fields) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                throw new InitializationError("Field annotated with @HiveRunnerSetup must be static: " + field);
+            }
+            config.override(ReflectionUtils.getStaticFieldValue(clazz, field.getName(), HiveRunnerConfig.class));
+        }
+
+        if (config.getHiveServerScope() != HiveServerScope.METHOD || config.isHiveServerPreBootEnabled()) {
+            LOGGER.warn("HiveServer scope and pre boot settings are ignored by {}", getClass().getSimpleName());
+            config.setHiveServerScope(HiveServerScope.METHOD);
+            config.setHiveServerPreBootEnabled(false);
+        }
+
+        setScheduler(new ParallelScheduler(getParallelism(config), getName()));
+    }
+
+    @Override
+    protected Statement classBlock(RunNotifier notifier) {
+        final Statement statement = super.classBlock(notifier);
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    statement.evaluate();
+                } finally {
+                    tearDownSharedHiveServer();
+                }
+            }
+        };
+    }
+
+    /**
+     * The config was loaded when the runner was created. Loading it for each test method would race with the
+     * concurrently executing test methods reading it.
+     */
+    @Override
+    protected TestRule getHiveRunnerConfigRule(Object target) {
+        return new TestRule() {
+            @Override
+            public Statement apply(Statement base, Description description) {
+                return base;
+            }
+        };
+    }
+
+    /**
+     * Open a session of its own for each test method on the shared HiveServer.
+     */
+    @Override
+    protected HiveServerContainer getHiveServerContainer(TemporaryFolder baseDir) {
+        String database = "hiverunner_session_" + sessionCounter.incrementAndGet();
+        return new HiveServerContainer(getSharedHiveServer(), baseDir, database);
+    }
+
+    private synchronized HiveServerContainer getSharedHiveServer() {
+        if (sharedHiveServerContainer == null) {
+            sharedHiveServerContainer = HiveServers.startInTemporaryFolder(getConfig());
+        }
+        return sharedHiveServerContainer;
+    }
+
+    private synchronized void tearDownSharedHiveServer() {
+        if (sharedHiveServerContainer != null) {
+            LOGGER.info("Tearing down shared HiveServer of {}", getName());
+            HiveServers.tearDownAndDelete(sharedHiveServerContainer);
+            sharedHiveServerContainer = null;
+        }
+    }
+
+    private static int getParallelism(HiveRunnerConfig config) {
+        int parallelism = config.getParallelism();
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Executes the test methods on a fixed number of threads and waits for all of them to finish.
+     */
+    private static class ParallelScheduler implements RunnerScheduler {
+
+        private final ExecutorService executor;
+
+        ParallelScheduler(int parallelism, final String name) {
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private final AtomicInteger threadCounter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        @Override
+        public void schedule(Runnable childStatement) {
+            executor.submit(childStatement);
+        }
+
+        @Override
+        public void finished() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for test methods to finish", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.sql.TableAccess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the results of read only queries until a statement writes one of the tables they read.
+ * <p/>
+ * Results are keyed by the statement text, with variables substituted and whitespace normalized, and by a scope
+ * naming the session and its current database, since the session conf may affect results. Invalidation is per table,
+ * so writing one partition invalidates the results of all queries reading the table. Statements whose effect can't be
+ * told from their text, like 'set', 'use', 'alter table' or 'create function', invalidate all results. Which queries
+ * may be cached at all is decided by {@link HiveServerContainer}.
+ */
+public final class ResultCache {
+
+    /**
+     * Max number of cached results by default, the least recently used results are evicted beyond that.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    /**
+     * Results with more rows than this are not cached by default.
+     */
+    public static final int DEFAULT_MAX_ROWS = 10000;
+
+    private final int maxRows;
+    private final Map<String, Entry> entries;
+    private long generation;
+    private long hits;
+    private long misses;
+
+    public ResultCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ROWS);
+    }
+
+    public ResultCache(final int maxEntries, int maxRows) {
+        this.maxRows = maxRows;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get a copy of the cached result of a query, or null if there is none.
+     *
+     * @param scope Names the session and current database the query is executed in.
+     * @param statement Statement with variables already substituted.
+     */
+    public synchronized List<Object[]> get(String scope, String statement) {
+        Entry entry = entries.get(key(scope, statement));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(entry.rows);
+    }
+
+    /**
+     * Get the current generation, to be passed to {@link #put} once the query has been executed.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache the result of a query unless something was invalidated since the query started, in which case the result
+     * might be stale already.
+     *
+     * @param generation The generation before the query was executed.
+     */
+    public synchronized void put(String scope, String statement, Set<String> reads, List<Object[]> rows,
+                                 long generation) {
+        if (generation == this.generation && rows.size() <= maxRows) {
+            entries.put(key(scope, statement), new Entry(reads, copy(rows)));
+        }
+    }
+
+    /**
+     * Drop the results made stale by a statement.
+     */
+    public synchronized void invalidate(TableAccess access) {
+        if (access.isBarrier()) {
+            clear();
+            return;
+        }
+        if (access.getWrites().isEmpty()) {
+            return;
+        }
+        generation++;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (!Collections.disjoint(it.next().reads, access.getWrites())) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop the results reading the given table, e.g. after data was written to it without a statement.
+     */
+    public synchronized void invalidate(String database, String table) {
+        generation++;
+        String qualified = (database + "." + table).toLowerCase();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().reads.contains(qualified)) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static String key(String scope, String statement) {
+        return scope + "\n" + StatementAnalysisCache.normalize(statement);
+    }
+
+    private static List<Object[]> copy(List<Object[]> rows) {
+        List<Object[]> copy = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            copy.add(row.clone());
+        }
+        return copy;
+    }
+
+    private static final class Entry {
+
+        private final Set<String> reads;
+        private final List<Object[]> rows;
+
+        private Entry(Set<String> reads, List<Object[]> rows) {
+            this.reads = reads;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Resources;
+import com.klarna.hiverunner.sql.StatementsSplitter;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hive.common.util.HiveVersionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.*;
+
+/**
+ * On disk cache of the state of a HiveServer after the setup scripts have been executed and the resources have been
+ * created. The state is made up of the metastore database and the files written to the base dir, e.g. the warehouse
+ * and hadoop.tmp.dir.
+ * <p/>
+ * Entries are keyed by a SHA-256 hash of the setup scripts, the resources, the hiveconf and hivevar values of the test
+ * and the hiveconf overrides of the HiveRunnerConfig, as well as the contents of the local files loaded with LOAD DATA
+ * LOCAL INPATH and the class files of the functions created by the setup scripts. The cache directory may be kept
+ * between builds. Anything else the setup scripts read, such as the classes a UDF depends on, is not part of the key
+ * and gives a stale entry when changed. Delete the cache directory when in doubt.
+ * <p/>
+ * A state can only be restored into a HiveServer that is about to be started, with an HSQLDB metastore. Setup scripts
+ * with session scoped statements (e.g. set, use, add jar or temporary functions) are not cached since the session
+ * state is not part of the snapshot. Neither are setup scripts loading files that can not be hashed (non local or
+ * variable paths) or creating functions from jars (CREATE FUNCTION ... USING JAR).
+ */
+public final class SetupStateCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SetupStateCache.class);
+
+    /**
+     * Bump when the snapshot format changes.
+     */
+    private static final String FORMAT_VERSION = "2";
+
+    private static final String METASTORE_FILE = "metastore.ser";
+    private static final String BASE_DIR_FILE = "basedir.txt";
+    private static final String FILES_DIR = "files";
+
+    private static final Pattern SESSION_SCOPED_STATEMENT = Pattern.compile(
+            "^(set|reset|use|add|delete|list|source|create\\s+temporary|drop\\s+temporary)\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern LOAD_DATA_STATEMENT = Pattern.compile(
+            "^load\\s+data\\s+(local\\s+)?inpath\\s+(['\"])(.*?)\\2.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern CREATE_FUNCTION_STATEMENT = Pattern.compile(
+            "^create\\s+function\\s+\\S+\\s+as\\s+(['\"])(.*?)\\1(.*)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * Metastore columns holding paths, which point to the base dir of the HiveServer the state was saved from.
+     */
+    private static final List<String[]> LOCATION_COLUMNS = Arrays.asList(
+            new String[]{"DBS", "DB_LOCATION_URI"},
+            new String[]{"SDS", "LOCATION"},
+            new String[]{"SKEWED_COL_VALUE_LOC_MAP", "LOCATION"});
+
+    private static final Pattern URI_SCHEME_AND_AUTHORITY = Pattern.compile("([a-zA-Z][a-zA-Z0-9+.-]*:(//[^/]*)?)?");
+
+    private final File directory;
+    private final Map<String, String> hiveConfOverrides;
+
+    public SetupStateCache(File directory, Map<String, String> hiveConfOverrides) {
+        this.directory = directory;
+        this.hiveConfOverrides = new TreeMap<>(hiveConfOverrides);
+    }
+
+    /**
+     * Look up the cache entry for the given setup. Returns null if the setup can not be cached.
+     *
+     * @param resources Resource data by target file, in the order the resources are created.
+     */
+    public Entry lookup(Map<String, String> hiveConf, Map<String, String> hiveVars, List<String> setupScripts,
+                        Map<String, byte[]> resources) {
+        MessageDigest digest = newDigest();
+        update(digest, FORMAT_VERSION);
+        update(digest, HiveVersionInfo.getVersion());
+        update(digest, hiveConfOverrides);
+        update(digest, new TreeMap<>(hiveConf));
+        update(digest, new TreeMap<>(hiveVars));
+        for (String setupScript : setupScripts) {
+            update(digest, setupScript);
+            for (String statement : StatementsSplitter.splitStatements(setupScript)) {
+                if (SESSION_SCOPED_STATEMENT.matcher(statement.trim()).matches()) {
+                    LOGGER.debug("Setup state not cached due to session scoped statement: {}", statement);
+                    return null;
+                }
+                if (!updateReferencedInput(digest, statement.trim())) {
+                    return null;
+                }
+            }
+        }
+        for (Map.Entry<String, byte[]> resource : resources.entrySet()) {
+            update(digest, resource.getKey());
+            update(digest, resource.getValue());
+        }
+
+        return new Entry(new File(directory, toHex(digest.digest())));
+    }
+
+    /**
+     * Add the contents of the file or class the statement reads to the digest. Returns false if the statement reads
+     * something that can not be hashed.
+     */
+    private static boolean updateReferencedInput(MessageDigest digest, String statement) {
+        Matcher loadData = LOAD_DATA_STATEMENT.matcher(statement);
+        if (loadData.matches()) {
+            String path = loadData.group(3);
+            if (loadData.group(1) == null || path.contains("${")) {
+                LOGGER.debug("Setup state not cached due to load of non local or variable path: {}", statement);
+                return false;
+            }
+            File file = path.startsWith("file:") ? new File(URI.create(path)) : new File(path);
+            try {
+                update(digest, file);
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug("Setup state not cached since " + file + " could not be read: " + e.getMessage(), e);
+                return false;
+            }
+        }
+
+        Matcher createFunction = CREATE_FUNCTION_STATEMENT.matcher(statement);
+        if (createFunction.matches()) {
+            if (!createFunction.group(3).trim().isEmpty()) {
+                LOGGER.debug("Setup state not cached due to function created from resources: {}", statement);
+                return false;
+            }
+            String className = createFunction.group(2);
+            URL classFile = Thread.currentThread().getContextClassLoader()
+                    .getResource(className.replace('.', '/') + ".class");
+            if (classFile == null) {
+                LOGGER.debug("Setup state not cached since class {} was not found", className);
+                return false;
+            }
+            try {
+                update(digest, className);
+                update(digest, Resources.toByteArray(classFile));
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug("Setup state not cached since " + classFile + " could not be read: " + e.getMessage(), e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A cached setup state, which may or may not exist yet.
+     */
+    public static final class Entry {
+
+        private final File directory;
+
+        private Entry(File directory) {
+            this.directory = directory;
+        }
+
+        public boolean exists() {
+            return new File(directory, METASTORE_FILE).isFile();
+        }
+
+        /**
+         * Save the state of a HiveServer that has just executed the setup scripts and created the resources. Another
+         * build or JVM saving the same entry concurrently is not an error, the first one to finish wins.
+         * <p/>
+         * This call will never throw an exception since a failure to save only costs a cache miss.
+         */
+        public void save(HiveServerContainer container) {
+            File tmpDirectory = new File(directory.getParentFile(), directory.getName() + "." + UUID.randomUUID());
+            try {
+                HiveConf conf = container.getHiveConf();
+                File baseDir = container.getBaseDir().getRoot();
+
+                Files.createDirectories(new File(tmpDirectory, FILES_DIR).toPath());
+                for (File file : container.listTestDataFiles()) {
+                    copyRecursively(file.toPath(), new File(tmpDirectory, relativePath(baseDir, file)).toPath());
+                }
+
+                List<String> statements;
+                try (Connection connection = connect(conf)) {
+                    statements = MetaStoreTemplate.script(connection);
+                }
+                try (ObjectOutputStream out = new ObjectOutputStream(
+                        Files.newOutputStream(new File(tmpDirectory, METASTORE_FILE).toPath()))) {
+                    out.writeObject(new ArrayList<>(statements));
+                }
+                Files.write(new File(tmpDirectory, BASE_DIR_FILE).toPath(),
+                        baseDir.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+
+                try {
+                    Files.move(tmpDirectory.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    LOGGER.info("Saved setup state to {}", directory);
+                } catch (FileAlreadyExistsException e) {
+                    LOGGER.debug("Setup state {} was saved concurrently", directory);
+                }
+            } catch (Throwable e) {
+                LOGGER.warn("Failed to save setup state to " + directory + ": " + e.getMessage(), e);
+            } finally {
+                FileUtil.fullyDelete(tmpDirectory);
+            }
+        }
+
+        /**
+         * Restore the state into a HiveServer that is being started. Must be called after the HiveServer context was
+         * initialized but before the metastore is connected.
+         */
+        void restore(HiveConf conf, File baseDir) {
+            try {
+                String savedBaseDir = new String(Files.readAllBytes(new File(directory, BASE_DIR_FILE).toPath()),
+                        StandardCharsets.UTF_8);
+
+                List<String> statements;
+                try (ObjectInputStream in = new ObjectInputStream(
+                        Files.newInputStream(new File(directory, METASTORE_FILE).toPath()))) {
+                    @SuppressWarnings("unchecked")
+                    List<String> saved = (List<String>) in.readObject();
+                    statements = saved;
+                }
+
+                try (Connection connection = connect(conf)) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.addBatch("DROP SCHEMA PUBLIC CASCADE");
+                        for (String sql : statements) {
+                            statement.addBatch(sql);
+                        }
+                        statement.executeBatch();
+                    }
+                    relocate(connection, savedBaseDir, baseDir.getAbsolutePath());
+                }
+
+                copyRecursively(new File(directory, FILES_DIR).toPath(), baseDir.toPath());
+                LOGGER.info("Restored setup state from {}", directory);
+            } catch (IOException | SQLException | ClassNotFoundException e) {
+                throw new IllegalStateException("Failed to restore setup state from " + directory + ": "
+                        + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return directory.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Point the locations in the metastore under the base dir of the HiveServer the state was saved from to the base
+     * dir of the HiveServer it is restored into.
+     */
+    private static void relocate(Connection connection, String savedBaseDir, String baseDir) throws SQLException {
+        for (String[] column : LOCATION_COLUMNS) {
+            String table = column[0];
+            String name = column[1];
+            try (ResultSet columns = connection.getMetaData().getColumns(null, "PUBLIC", table, name)) {
+                if (!columns.next()) {
+                    continue;
+                }
+            }
+            List<String> locations = new ArrayList<>();
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT DISTINCT " + name + " FROM " + table + " WHERE " + name + " IS NOT NULL")) {
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        locations.add(resultSet.getString(1));
+                    }
+                }
+            }
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE " + table + " SET " + name + " = ? WHERE " + name + " = ?")) {
+                for (String location : locations) {
+                    String relocated = relocate(location, savedBaseDir, baseDir);
+                    if (relocated != null) {
+                        update.setString(1, relocated);
+                        update.setString(2, location);
+                        update.addBatch();
+                    }
+                }
+                update.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Replace the saved base dir at the start of the path of the given location, keeping any scheme and authority.
+     * Returns null if the location is not under the saved base dir.
+     */
+    static String relocate(String location, String savedBaseDir, String baseDir) {
+        int index = location.indexOf(savedBaseDir);
+        int end = index + savedBaseDir.length();
+        if (index < 0
+                || !URI_SCHEME_AND_AUTHORITY.matcher(location.substring(0, index)).matches()
+                || (end < location.length() && location.charAt(end) != '/')) {
+            return null;
+        }
+        return location.substring(0, index) + baseDir + location.substring(end);
+    }
+
+    private static Connection connect(HiveConf conf) throws SQLException {
+        String url = conf.getVar(METASTORECONNECTURLKEY);
+        Preconditions.checkState(url.startsWith("jdbc:hsqldb:"),
+                "Setup state can only be cached with an HSQLDB metastore: %s", url);
+        return DriverManager.getConnection(url, conf.getVar(METASTORE_CONNECTION_USER_NAME), conf.getVar(METASTOREPWD));
+    }
+
+    private static String relativePath(File baseDir, File file) {
+        return FILES_DIR + File.separator + baseDir.toURI().relativize(file.toURI()).getPath();
+    }
+
+    private static void copyRecursively(final Path source, final Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path targetFile = target.resolve(source.relativize(file).toString());
+                Files.createDirectories(targetFile.getParent());
+                Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, Map<String, String> values) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue());
+        }
+        update(digest, "");
+    }
+
+    private static void update(MessageDigest digest, File file) throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                throw new IOException("Unable to list " + file);
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                update(digest, child.getName());
+                update(digest, child);
+            }
+        } else {
+            update(digest, Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        update(digest, value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void update(MessageDigest digest, byte[] value) {
+        // Length prefix to keep ('ab', 'c') and ('a', 'bc') apart
+        digest.update(Integer.toString(value.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(value);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
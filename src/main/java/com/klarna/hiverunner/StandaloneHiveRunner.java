@@ -49,9 +49,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.reflections.ReflectionUtils.withAnnotation;
 import static org.reflections.ReflectionUtils.withType;
@@ -63,7 +65,35 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StandaloneHiveRunner.class);
 
-    private HiveShellContainer container;
+    /**
+     * Shells of the currently executing test methods. Keyed by the test description since test methods may execute
+     * concurrently, see {@link ParallelStandaloneHiveRunner}.
+     */
+    private final Map<Description, HiveShellContainer> containers = new ConcurrentHashMap<>();
+
+    /**
+     * HiveServer and base dir shared by all test methods in the test class when running with
+     * {@link HiveServerScope#CLASS}.
+     */
+    private HiveServerContainer classHiveServerContainer;
+    private TemporaryFolder classBaseDir;
+
+    /**
+     * Boots the HiveServer of the next test method in the background when pre boot is enabled, see
+     * {@link HiveRunnerConfig#isHiveServerPreBootEnabled()}. The pre booted HiveServer of the current test method owns
+     * its base dir, which is removed once the test method is done.
+     */
+    private HiveServerPreBooter preBooter;
+    private HiveServerContainer preBootedHiveServerContainer;
+
+    /**
+     * Tears down the HiveServers of finished test methods in the background when enabled, see
+     * {@link HiveRunnerConfig#isAsyncTearDownEnabled()}. Base dirs handed over to it are not deleted by their
+     * TemporaryFolder rule.
+     */
+    private BackgroundTearDown backgroundTearDown;
+    private final Set<TemporaryFolder> detachedBaseDirs = Collections.newSetFromMap(
+            new ConcurrentHashMap<TemporaryFolder, Boolean>());
 
     /**
      * We need to init config because we're going to pass
@@ -75,18 +105,30 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
         super(clazz);
     }
 
+    protected HiveRunnerConfig getConfig() {
+        return config;
+    }
+
 
     @Override
     protected List<TestRule> getTestRules(final Object target) {
-        final TemporaryFolder testBaseDir = new TemporaryFolder();
+        final TemporaryFolder testBaseDir = new TemporaryFolder() {
+            @Override
+            protected void after() {
+                // Deleted along with the HiveServer by the background tear down
+                if (!detachedBaseDirs.remove(this)) {
+                    super.after();
+                }
+            }
+        };
 
         TestRule hiveRunnerRule = new TestRule() {
             @Override
-            public Statement apply(final Statement base, Description description) {
+            public Statement apply(final Statement base, final Description description) {
                 Statement statement = new Statement() {
                     @Override
                     public void evaluate() throws Throwable {
-                        evaluateStatement(target, testBaseDir, base);
+                        evaluateStatement(target, testBaseDir, base, description);
                     }
                 };
                 return statement;
@@ -111,6 +153,23 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
         return rules;
     }
 
+    @Override
+    protected Statement classBlock(RunNotifier notifier) {
+        final Statement statement = super.classBlock(notifier);
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    statement.evaluate();
+                } finally {
+                    drainBackgroundTearDown();
+                    tearDownClassHiveServer();
+                    closePreBooter();
+                }
+            }
+        };
+    }
+
     @Override
     protected void runChild(final FrameworkMethod method, RunNotifier notifier) {
         Description description = describeChild(method);
@@ -152,7 +211,9 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
                         "Test case timed out. Will attempt retry {} more times. Turn on log level DEBUG for stacktrace",
                         retriesLeft);
                 LOGGER.debug(e.getMessage(), e);
-                tearDown();
+                tearDown(describeChild(method));
+                // The state of a shared HiveServer is unknown after a timeout. Start over with a new one.
+                tearDownClassHiveServer();
                 runTestMethod(method, notifier, retriesLeft);
             } else {
                 notifier.addFailure(e);
@@ -165,19 +226,40 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
     /**
      * Drives the unit test.
      */
-    private void evaluateStatement(Object target, TemporaryFolder temporaryFolder, Statement base) throws Throwable {
-        container = null;
-        FileUtil.setPermission(temporaryFolder.getRoot(), FsPermission.getDirDefault());
+    private void evaluateStatement(Object target, TemporaryFolder temporaryFolder, Statement base,
+                                   Description description) throws Throwable {
+        TemporaryFolder baseDir = config.getHiveServerScope() == HiveServerScope.CLASS ?
+                getClassBaseDir() : temporaryFolder;
+        FileUtil.setPermission(baseDir.getRoot(), FsPermission.getDirDefault());
         try {
-            LOGGER.info("Setting up {} in {}", getName(), temporaryFolder.getRoot().getAbsolutePath());
-            container = createHiveServerContainer(target, temporaryFolder);
+            LOGGER.info("Setting up {} in {}", getName(), baseDir.getRoot().getAbsolutePath());
+            containers.put(description, createHiveServerContainer(target, baseDir));
             base.evaluate();
         } finally {
-            tearDown();
+            tearDown(description);
         }
     }
 
-    private void tearDown() {
+    private void tearDown(Description description) {
+        final HiveShellContainer container = containers.remove(description);
+        if (container != null && isAsyncTearDown()) {
+            LOGGER.info("Tearing down {} in the background", getName());
+            final TemporaryFolder baseDir = container.getBaseDir();
+            if (preBootedHiveServerContainer == null) {
+                detachedBaseDirs.add(baseDir);
+            }
+            preBootedHiveServerContainer = null;
+            getBackgroundTearDown().submit(description.getDisplayName(), new Runnable() {
+                @Override
+                public void run() {
+                    container.tearDown();
+                    baseDir.delete();
+                    Preconditions.checkState(!baseDir.getRoot().exists(), "Failed to delete base dir %s",
+                            baseDir.getRoot());
+                }
+            });
+            return;
+        }
         if (container != null) {
             LOGGER.info("Tearing down {}", getName());
             try {
@@ -186,6 +268,103 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
                 LOGGER.warn("Tear down failed: " + e.getMessage(), e);
             }
         }
+        if (preBootedHiveServerContainer != null) {
+            preBootedHiveServerContainer.getBaseDir().delete();
+            preBootedHiveServerContainer = null;
+        }
+    }
+
+    private boolean isAsyncTearDown() {
+        return config.isAsyncTearDownEnabled()
+                && config.getHiveServerScope() == HiveServerScope.METHOD
+                && !"tez".equalsIgnoreCase(config.getHiveExecutionEngine());
+    }
+
+    private synchronized BackgroundTearDown getBackgroundTearDown() {
+        if (backgroundTearDown == null) {
+            backgroundTearDown = new BackgroundTearDown(getName(), config.getAsyncTearDownLimit());
+        }
+        return backgroundTearDown;
+    }
+
+    private synchronized void drainBackgroundTearDown() {
+        if (backgroundTearDown != null) {
+            backgroundTearDown.drain();
+            backgroundTearDown = null;
+        }
+        detachedBaseDirs.clear();
+    }
+
+    private TemporaryFolder getClassBaseDir() throws IOException {
+        if (classBaseDir == null) {
+            TemporaryFolder baseDir = new TemporaryFolder();
+            baseDir.create();
+            classBaseDir = baseDir;
+        }
+        return classBaseDir;
+    }
+
+    private void tearDownClassHiveServer() {
+        if (classHiveServerContainer != null) {
+            LOGGER.info("Tearing down shared HiveServer of {}", getName());
+            try {
+                classHiveServerContainer.tearDown();
+            } catch (Throwable e) {
+                LOGGER.warn("Tear down failed: " + e.getMessage(), e);
+            }
+            classHiveServerContainer = null;
+        }
+        if (classBaseDir != null) {
+            classBaseDir.delete();
+            classBaseDir = null;
+        }
+    }
+
+    private HiveServerPreBooter getPreBooter() {
+        if (preBooter == null) {
+            int testMethods = 0;
+            for (FrameworkMethod method : getChildren()) {
+                if (method.getAnnotation(Ignore.class) == null) {
+                    testMethods++;
+                }
+            }
+            preBooter = new HiveServerPreBooter(config, getName(), testMethods);
+        }
+        return preBooter;
+    }
+
+    private void closePreBooter() {
+        if (preBooter != null) {
+            preBooter.close();
+            preBooter = null;
+        }
+    }
+
+    /**
+     * Get the HiveServer to run the test on. Depending on the configured {@link HiveServerScope} this is either a new
+     * HiveServer (possibly pre booted), the one shared by all test methods in the test class or one leased from the
+     * {@link HiveServerPool}.
+     */
+    protected HiveServerContainer getHiveServerContainer(TemporaryFolder baseDir) {
+        switch (config.getHiveServerScope()) {
+            case CLASS:
+                if (classHiveServerContainer == null) {
+                    HiveServerContainer hiveServerContainer =
+                            new HiveServerContainer(new StandaloneHiveServerContext(baseDir, config));
+                    // Test case properties are applied per session since they may differ between test methods
+                    hiveServerContainer.startHiveServer(Collections.<String, String>emptyMap());
+                    classHiveServerContainer = hiveServerContainer;
+                }
+                return classHiveServerContainer;
+            case JVM:
+                return HiveServerPool.getInstance().lease(config);
+            default:
+                if (config.isHiveServerPreBootEnabled()) {
+                    preBootedHiveServerContainer = getPreBooter().take();
+                    return preBootedHiveServerContainer;
+                }
+                return new HiveServerContainer(new StandaloneHiveServerContext(baseDir, config));
+        }
     }
 
     /**
@@ -194,15 +373,43 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
     private HiveShellContainer createHiveServerContainer(final Object testCase, TemporaryFolder baseDir)
             throws IOException {
 
-        HiveServerContext context = new StandaloneHiveServerContext(baseDir, config);
+        final HiveServerContainer hiveTestHarness = getHiveServerContainer(baseDir);
+        try {
+            return createHiveShell(testCase, hiveTestHarness);
+        } catch (Throwable e) {
+            if (config.getHiveServerScope() == HiveServerScope.JVM) {
+                // The shell never got hold of the leased HiveServer, hand it back to the pool
+                HiveServerPool.getInstance().release(hiveTestHarness);
+            } else if (hiveTestHarness == preBootedHiveServerContainer) {
+                HiveServers.tearDownAndDelete(hiveTestHarness);
+                preBootedHiveServerContainer = null;
+            }
+            throw e;
+        }
+    }
 
-        final HiveServerContainer hiveTestHarness = new HiveServerContainer(context);
+    private HiveShellContainer createHiveShell(final Object testCase, HiveServerContainer hiveTestHarness)
+            throws IOException {
 
         HiveShellBuilder hiveShellBuilder = new HiveShellBuilder();
         hiveShellBuilder.setCommandShellEmulation(config.getCommandShellEmulation());
+        hiveShellBuilder.setHiveServerScope(config.getHiveServerScope());
+        hiveShellBuilder.setLazyStart(config.isLazyStartEnabled());
+        if (!config.getSetupStateCacheDir().isEmpty()) {
+            hiveShellBuilder.setSetupStateCache(new SetupStateCache(new File(config.getSetupStateCacheDir()),
+                    config.getHiveConfSystemOverride()));
+        }
+
+        hiveShellBuilder.setSetupScriptParallelism(config.getSetupScriptParallelism());
+        hiveShellBuilder.setInsertParallelism(config.getInsertParallelism());
 
         HiveShellField shellSetter = loadScriptUnderTest(testCase, hiveShellBuilder);
 
+        hiveTestHarness.setFetchSize(config.getFetchSize());
+        hiveTestHarness.setResultPrefetchEnabled(config.isResultPrefetchEnabled());
+        hiveTestHarness.setMaxOpenOperations(config.getMaxOpenOperations());
+        hiveTestHarness.setResultCacheEnabled(config.isResultCacheEnabled());
+        hiveTestHarness.setDriverExecutionEnabled(config.isDriverExecutionEnabled());
         hiveShellBuilder.setHiveServerContainer(hiveTestHarness);
 
         loadAnnotatedResources(testCase, hiveShellBuilder);
@@ -343,7 +550,7 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
         }
     }
 
-    private TestRule getHiveRunnerConfigRule(final Object target) {
+    protected TestRule getHiveRunnerConfigRule(final Object target) {
         return new TestRule() {
             @Override
             public Statement apply(Statement base, Description description) {
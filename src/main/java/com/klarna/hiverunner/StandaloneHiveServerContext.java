@@ -80,6 +80,8 @@ public class StandaloneHiveServerContext implements HiveServerContext {
 
         overrideHiveConf(hiveConf);
 
+        cloneMetaStoreTemplate(hiveConf);
+
     }
 
     protected void configureMiscHiveSettings(HiveConf hiveConf) {
@@ -184,6 +186,31 @@ public class StandaloneHiveServerContext implements HiveServerContext {
         conf.setBoolVar(METASTORE_VALIDATE_TABLES, true);
     }
 
+    /**
+     * Populate the metastore database with the schema of the {@link MetaStoreTemplate} built for the metastore
+     * settings of this context, unless the template is disabled or the metastore connection url was overridden.
+     */
+    protected void cloneMetaStoreTemplate(HiveConf conf) {
+        if (!hiveRunnerConfig.isMetaStoreTemplateEnabled()
+                || !conf.getVar(METASTORECONNECTURLKEY).startsWith(metaStorageUrl)) {
+            return;
+        }
+        MetaStoreTemplate metaStoreTemplate = MetaStoreTemplate.getInstance(conf);
+        if (metaStoreTemplate == null) {
+            return;
+        }
+        metaStoreTemplate.cloneInto(metaStorageUrl, conf.getVar(METASTORE_CONNECTION_USER_NAME),
+                conf.getVar(METASTOREPWD));
+
+        // A schema cloned from the template is known to be complete. Validating it would cost as much as creating it.
+        for (HiveConf.ConfVars validate : new HiveConf.ConfVars[]{
+                METASTORE_VALIDATE_CONSTRAINTS, METASTORE_VALIDATE_COLUMNS, METASTORE_VALIDATE_TABLES}) {
+            if (!hiveRunnerConfig.getHiveConfSystemOverride().containsKey(validate.varname)) {
+                conf.setBoolVar(validate, false);
+            }
+        }
+    }
+
     protected void configureFileSystem(TemporaryFolder basedir, HiveConf conf) {
         conf.setVar(METASTORECONNECTURLKEY, metaStorageUrl + ";create=true");
 
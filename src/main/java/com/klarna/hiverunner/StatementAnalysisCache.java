@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.sql.StatementAnalyzer;
+import com.klarna.hiverunner.sql.StatementDependencies;
+import com.klarna.hiverunner.sql.TableAccess;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the tables statements read and write for the parallel setup scripts and the result cache of a HiveServer, so
+ * that statements executed over and over, like setup scripts of reused HiveServers, are parsed once.
+ * <p/>
+ * Entries are keyed by the statement text with whitespace outside of quotes normalized, and by the database
+ * unqualified names refer to. The analysis reads neither the HiveConf nor the metastore, so no change to those makes an
+ * entry stale.
+ */
+final class StatementAnalysisCache implements StatementAnalyzer {
+
+    /**
+     * Max number of cached statements by default, the least recently used statements are evicted beyond that.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final Map<String, TableAccess> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    StatementAnalysisCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    StatementAnalysisCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, TableAccess>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TableAccess> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public TableAccess analyze(String statement, String database) {
+        String key = database.toLowerCase() + "\n" + normalize(statement);
+        synchronized (entries) {
+            TableAccess access = entries.get(key);
+            if (access != null) {
+                hits.incrementAndGet();
+                return access;
+            }
+        }
+
+        misses.incrementAndGet();
+        TableAccess access = StatementDependencies.analyze(statement, database);
+        synchronized (entries) {
+            entries.put(key, access);
+        }
+        return access;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Collapse whitespace outside of quotes and comments into single spaces and drop trailing semicolons, leaving the
+     * case of the statement as is since string literals are case sensitive.
+     */
+    static String normalize(String statement) {
+        StringBuilder normalized = new StringBuilder(statement.length());
+        char quote = 0;
+        boolean whitespace = false;
+        for (int i = 0; i < statement.length(); i++) {
+            char c = statement.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == '\\' && quote != '`' && i + 1 < statement.length()) {
+                    normalized.append(statement.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                whitespace = true;
+            } else {
+                if (whitespace && normalized.length() > 0 && normalized.charAt(normalized.length() - 1) != '\n') {
+                    normalized.append(' ');
+                }
+                whitespace = false;
+                if (c == '-' && statement.startsWith("-", i + 1)) {
+                    // Keep comments up to and including the line break that ends them
+                    int end = statement.indexOf('\n', i);
+                    end = end < 0 ? statement.length() : end + 1;
+                    normalized.append(statement, i, end);
+                    i = end - 1;
+                    continue;
+                }
+                if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                }
+                normalized.append(c);
+            }
+        }
+
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == ';' || normalized.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        normalized.setLength(end);
+        return normalized.toString();
+    }
+}
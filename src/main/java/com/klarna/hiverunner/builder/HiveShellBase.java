@@ -18,10 +18,14 @@ package com.klarna.hiverunner.builder;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.klarna.hiverunner.CloseableIterator;
 import com.klarna.hiverunner.CommandShellEmulation;
 import com.klarna.hiverunner.HiveServerContainer;
+import com.klarna.hiverunner.HiveSession;
 import com.klarna.hiverunner.HiveShell;
+import com.klarna.hiverunner.SetupStateCache;
 import com.klarna.hiverunner.data.InsertIntoTable;
+import com.klarna.hiverunner.result.ColumnarResult;
 import com.klarna.hiverunner.sql.StatementsSplitter;
 
 import org.apache.hadoop.hive.conf.HiveConf;
@@ -39,9 +43,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 
 /**
@@ -54,6 +62,9 @@ class HiveShellBase implements HiveShell {
     private static final String DEFAULT_ROW_VALUE_DELIMTER = "\t";
 
     protected boolean started = false;
+    private boolean initialized = false;
+    private boolean initializing = false;
+    private RuntimeException initFailure;
 
     protected final HiveServerContainer hiveServerContainer;
 
@@ -63,6 +74,11 @@ class HiveShellBase implements HiveShell {
     protected final List<HiveResource> resources;
     protected final List<String> scriptsUnderTest;
     protected final CommandShellEmulation commandShellEmulation;
+    protected final boolean lazyStart;
+    protected final SetupStateCache setupStateCache;
+    protected final int setupScriptParallelism;
+    protected final int insertParallelism;
+    private final List<HiveShellSession> openSessions = new CopyOnWriteArrayList<>();
 
 
     HiveShellBase(HiveServerContainer hiveServerContainer,
@@ -70,7 +86,11 @@ class HiveShellBase implements HiveShell {
                   List<String> setupScripts,
                   List<HiveResource> resources,
                   List<String> scriptsUnderTest,
-                  CommandShellEmulation commandShellEmulation) {
+                  CommandShellEmulation commandShellEmulation,
+                  boolean lazyStart,
+                  SetupStateCache setupStateCache,
+                  int setupScriptParallelism,
+                  int insertParallelism) {
         this.hiveServerContainer = hiveServerContainer;
         this.hiveConf = hiveConf;
         this.setupScripts = new ArrayList<>(setupScripts);
@@ -78,7 +98,10 @@ class HiveShellBase implements HiveShell {
         this.scriptsUnderTest = new ArrayList<>(scriptsUnderTest);
         this.hiveVars = new HashMap<>();
         this.commandShellEmulation = commandShellEmulation;
-
+        this.lazyStart = lazyStart;
+        this.setupStateCache = setupStateCache;
+        this.setupScriptParallelism = setupScriptParallelism;
+        this.insertParallelism = insertParallelism;
     }
 
     @Override
@@ -98,11 +121,85 @@ class HiveShellBase implements HiveShell {
         return result;
     }
 
+    @Override
+    public List<String> executeQuery(String hql, int maxRows) {
+        List<Object[]> resultSet = executeStatement(hql, maxRows);
+        List<String> result = new ArrayList<>();
+        for (Object[] objects : resultSet) {
+            result.add(Joiner.on(DEFAULT_ROW_VALUE_DELIMTER).useForNull(DEFAULT_NULL_REPRESENTATION).join(objects));
+        }
+        return result;
+    }
+
     @Override
     public List<Object[]> executeStatement(String hql) {
+        assertStarted();
         return executeStatementWithCommandShellEmulation(hql);
     }
+
+    @Override
+    public List<Object[]> executeStatement(String hql, int maxRows) {
+        assertStarted();
+        return hiveServerContainer.executeStatement(commandShellEmulation.transformStatement(hql), maxRows);
+    }
     
+    @Override
+    public CloseableIterator<Object[]> executeStatementStream(String hql) {
+        assertStarted();
+        return hiveServerContainer.executeStatementStream(commandShellEmulation.transformStatement(hql));
+    }
+
+    @Override
+    public CloseableIterator<Object[]> executeStatementStream(String hql, int maxRows) {
+        assertStarted();
+        return hiveServerContainer.executeStatementStream(commandShellEmulation.transformStatement(hql), maxRows);
+    }
+
+    @Override
+    public CloseableIterator<String> executeQueryIterator(String hql) {
+        return executeQueryIterator(hql, DEFAULT_ROW_VALUE_DELIMTER, DEFAULT_NULL_REPRESENTATION);
+    }
+
+    @Override
+    public CloseableIterator<String> executeQueryIterator(String hql, String rowValuesDelimitedBy,
+                                                          String replaceNullWith) {
+        final Joiner joiner = Joiner.on(rowValuesDelimitedBy).useForNull(replaceNullWith);
+        final CloseableIterator<Object[]> rows = executeStatementStream(hql);
+        return new CloseableIterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return joiner.join(rows.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                rows.close();
+            }
+        };
+    }
+
+    @Override
+    public ColumnarResult executeColumnarQuery(String hql) {
+        assertStarted();
+        return hiveServerContainer.executeStatementColumnar(commandShellEmulation.transformStatement(hql));
+    }
+
+    @Override
+    public Future<List<Object[]>> executeAsync(String hql) {
+        assertStarted();
+        return hiveServerContainer.executeStatementAsync(commandShellEmulation.transformStatement(hql));
+    }
+
     private List<Object[]> executeStatementWithCommandShellEmulation(String hql) {
       return hiveServerContainer.executeStatement(commandShellEmulation.transformStatement(hql));
     }
@@ -147,13 +244,68 @@ class HiveShellBase implements HiveShell {
         assertNotStarted();
         started = true;
 
-        hiveServerContainer.init(hiveConf, hiveVars);
+        if (!lazyStart) {
+            initHiveServer();
+        }
+    }
 
-        executeSetupScripts();
+    /**
+     * Init the HiveServer session, create the resources and run the setup scripts and scripts under test. With lazy
+     * start this is deferred until the shell is first used.
+     * <p/>
+     * With a setup state cache the state after the setup scripts and resources is restored from the cache if present,
+     * and saved to it otherwise.
+     */
+    private void initHiveServer() {
+        // The setup and the scripts under test are executed through the shell itself
+        initializing = true;
+        try {
+            SetupStateCache.Entry setupState = lookupSetupState();
+            if (setupState != null && setupState.exists()) {
+                LOGGER.debug("Restoring setup state from " + setupState);
+                hiveServerContainer.init(hiveConf, hiveVars, setupState);
+            } else {
+                hiveServerContainer.init(hiveConf, hiveVars);
 
-        prepareResources();
+                executeSetupScripts();
 
-        executeScriptsUnderTest();
+                prepareResources();
+
+                if (setupState != null) {
+                    setupState.save(hiveServerContainer);
+                }
+            }
+
+            executeScriptsUnderTest();
+            initialized = true;
+        } catch (RuntimeException e) {
+            initFailure = e;
+            throw e;
+        } finally {
+            initializing = false;
+        }
+    }
+
+    /**
+     * Get the setup state cache entry of this shell or null if the setup state can't be cached, e.g. if the HiveServer
+     * is already started and thereby has a state of its own.
+     */
+    private SetupStateCache.Entry lookupSetupState() {
+        if (setupStateCache == null || hiveServerContainer.isStarted()) {
+            return null;
+        }
+
+        List<String> transformedSetupScripts = new ArrayList<>();
+        for (String setupScript : setupScripts) {
+            transformedSetupScripts.add(commandShellEmulation.transformScript(setupScript));
+        }
+
+        Map<String, byte[]> resourceData = new LinkedHashMap<>();
+        for (HiveResource resource : resources) {
+            resourceData.put(resource.getTargetFile(), resource.getOutputStream().toByteArray());
+        }
+
+        return setupStateCache.lookup(hiveConf, hiveVars, transformedSetupScripts, resourceData);
     }
 
     @Override
@@ -272,15 +424,55 @@ class HiveShellBase implements HiveShell {
     }
 
     @Override
-    public InsertIntoTable insertInto(String databaseName, String tableName) {
+    public InsertIntoTable insertInto(final String databaseName, final String tableName) {
+        assertStarted();
+        return InsertIntoTable.newInstance(databaseName, tableName, getHiveConf(), insertParallelism, new Runnable() {
+            @Override
+            public void run() {
+                hiveServerContainer.invalidateResults(databaseName, tableName);
+            }
+        });
+    }
+
+    @Override
+    public HiveSession openSession() {
+        return openSession(Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public HiveSession openSession(Map<String, String> sessionHiveConf, Map<String, String> sessionHiveVars) {
         assertStarted();
-        return InsertIntoTable.newInstance(databaseName, tableName, getHiveConf());
+
+        Map<String, String> conf = new HashMap<>(hiveConf);
+        conf.putAll(sessionHiveConf);
+        Map<String, String> vars = new HashMap<>(hiveVars);
+        vars.putAll(sessionHiveVars);
+
+        HiveShellSession session = new HiveShellSession(hiveServerContainer.newSession(conf, vars),
+                commandShellEmulation, openSessions);
+        openSessions.add(session);
+        return session;
+    }
+
+    /**
+     * Close the sessions opened by the test that are still open. Should be called before the hive server is torn down
+     * or reset.
+     */
+    protected final void closeOpenSessions() {
+        for (HiveShellSession session : openSessions) {
+            try {
+                session.close();
+            } catch (Throwable e) {
+                LOGGER.warn("Failed to close session: " + e.getMessage(), e);
+            }
+        }
     }
 
     private void executeSetupScripts() {
         for (String setupScript : setupScripts) {
             LOGGER.debug("Executing script: " + setupScript);
-            executeScriptWithCommandShellEmulation(setupScript);
+            hiveServerContainer.executeScript(commandShellEmulation.transformScript(setupScript),
+                    setupScriptParallelism);
         }
     }
 
@@ -352,8 +544,18 @@ class HiveShellBase implements HiveShell {
     }
 
 
+    /**
+     * Asserts that the shell was started and makes sure that the HiveServer is initialized, which it might not be
+     * with lazy start. Should the initialization have failed, every later use of the shell fails with that cause.
+     */
     protected final void assertStarted() {
         Preconditions.checkState(started, "HiveShell was not started");
+        if (initFailure != null) {
+            throw new IllegalStateException("HiveShell failed to start: " + initFailure.getMessage(), initFailure);
+        }
+        if (!initialized && !initializing) {
+            initHiveServer();
+        }
     }
 
     private OutputStream createPreStartOutputStream(final ByteArrayOutputStream resourceOutputStream) {
@@ -19,7 +19,9 @@ package com.klarna.hiverunner.builder;
 import com.google.common.base.Preconditions;
 import com.klarna.hiverunner.CommandShellEmulation;
 import com.klarna.hiverunner.HiveServerContainer;
+import com.klarna.hiverunner.HiveServerScope;
 import com.klarna.hiverunner.HiveShellContainer;
+import com.klarna.hiverunner.SetupStateCache;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -40,6 +42,11 @@ public class HiveShellBuilder {
     private final List<HiveResource> resources = new ArrayList<>();
     private final List<String> setupScripts = new ArrayList<>();
     private CommandShellEmulation commandShellEmulation = CommandShellEmulation.HIVE_CLI;
+    private HiveServerScope hiveServerScope = HiveServerScope.METHOD;
+    private boolean lazyStart = false;
+    private SetupStateCache setupStateCache;
+    private int setupScriptParallelism = 1;
+    private int insertParallelism = 1;
 
     public void setHiveServerContainer(HiveServerContainer hiveServerContainer) {
         this.hiveServerContainer = hiveServerContainer;
@@ -76,8 +83,41 @@ public class HiveShellBuilder {
       this.commandShellEmulation = commandShellEmulation;
     }
 
+    public void setHiveServerScope(HiveServerScope hiveServerScope) {
+        this.hiveServerScope = hiveServerScope;
+    }
+
+    public void setLazyStart(boolean lazyStart) {
+        this.lazyStart = lazyStart;
+    }
+
+    public void setSetupStateCache(SetupStateCache setupStateCache) {
+        this.setupStateCache = setupStateCache;
+    }
+
+    public void setSetupScriptParallelism(int setupScriptParallelism) {
+        this.setupScriptParallelism = setupScriptParallelism;
+    }
+
+    public void setInsertParallelism(int insertParallelism) {
+        this.insertParallelism = insertParallelism;
+    }
+
     public HiveShellContainer buildShell() {
-        return new HiveShellTearable(hiveServerContainer, props, setupScripts, resources, scriptsUnderTest, commandShellEmulation);
+        switch (hiveServerScope) {
+            case CLASS:
+                return new HiveShellResettable(hiveServerContainer, props, setupScripts, resources, scriptsUnderTest,
+                        commandShellEmulation, lazyStart, setupStateCache, setupScriptParallelism,
+                        insertParallelism);
+            case JVM:
+                return new HiveShellReleasable(hiveServerContainer, props, setupScripts, resources, scriptsUnderTest,
+                        commandShellEmulation, lazyStart, setupStateCache, setupScriptParallelism,
+                        insertParallelism);
+            default:
+                return new HiveShellTearable(hiveServerContainer, props, setupScripts, resources, scriptsUnderTest,
+                        commandShellEmulation, lazyStart, setupStateCache, setupScriptParallelism,
+                        insertParallelism);
+        }
     }
 }
 
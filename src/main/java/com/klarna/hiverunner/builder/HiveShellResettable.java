@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.builder;
+
+import com.klarna.hiverunner.CommandShellEmulation;
+import com.klarna.hiverunner.HiveServerContainer;
+import com.klarna.hiverunner.HiveShellContainer;
+import com.klarna.hiverunner.SetupStateCache;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HiveShellContainer implementation that will reset the hive server after the test method is executed, leaving it
+ * running for the next test method.
+ */
+class HiveShellResettable extends HiveShellBase implements HiveShellContainer {
+
+    HiveShellResettable(HiveServerContainer hiveServerContainer, Map<String, String> hiveConf,
+                        List<String> setupScripts, List<HiveResource> resources,
+                        List<String> scriptsUnderTest, CommandShellEmulation commandShellEmulation,
+                        boolean lazyStart, SetupStateCache setupStateCache, int setupScriptParallelism,
+                        int insertParallelism) {
+        super(hiveServerContainer, hiveConf, setupScripts, resources, scriptsUnderTest, commandShellEmulation,
+                lazyStart, setupStateCache, setupScriptParallelism, insertParallelism);
+    }
+
+    @Override
+    public void tearDown() {
+        closeOpenSessions();
+        hiveServerContainer.reset();
+    }
+}
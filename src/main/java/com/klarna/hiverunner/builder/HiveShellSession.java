@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.builder;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.klarna.hiverunner.CommandShellEmulation;
+import com.klarna.hiverunner.HiveServerContainer;
+import com.klarna.hiverunner.HiveSession;
+import org.apache.hadoop.hive.conf.HiveConf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * HiveSession implementation delegating to a session only HiveServerContainer.
+ */
+class HiveShellSession implements HiveSession {
+
+    private static final String DEFAULT_NULL_REPRESENTATION = "NULL";
+    private static final String DEFAULT_ROW_VALUE_DELIMTER = "\t";
+
+    private final HiveServerContainer session;
+    private final CommandShellEmulation commandShellEmulation;
+    private final Collection<HiveShellSession> openSessions;
+    private volatile boolean closed = false;
+
+    /**
+     * @param openSessions The open sessions of the owning shell. This session removes itself once closed.
+     */
+    HiveShellSession(HiveServerContainer session, CommandShellEmulation commandShellEmulation,
+                     Collection<HiveShellSession> openSessions) {
+        this.session = session;
+        this.commandShellEmulation = commandShellEmulation;
+        this.openSessions = openSessions;
+    }
+
+    @Override
+    public List<String> executeQuery(String hql) {
+        return executeQuery(hql, DEFAULT_ROW_VALUE_DELIMTER, DEFAULT_NULL_REPRESENTATION);
+    }
+
+    @Override
+    public List<String> executeQuery(String hql, String rowValuesDelimitedBy, String replaceNullWith) {
+        List<String> result = new ArrayList<>();
+        for (Object[] objects : executeStatement(hql)) {
+            result.add(Joiner.on(rowValuesDelimitedBy).useForNull(replaceNullWith).join(objects));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Object[]> executeStatement(String hql) {
+        assertOpen();
+        return session.executeStatement(commandShellEmulation.transformStatement(hql));
+    }
+
+    @Override
+    public void execute(String script) {
+        assertOpen();
+        session.executeScript(commandShellEmulation.transformScript(script));
+    }
+
+    @Override
+    public HiveConf getHiveConf() {
+        assertOpen();
+        return session.getHiveConf();
+    }
+
+    @Override
+    public String expandVariableSubstitutes(String expression) {
+        assertOpen();
+        return session.expandVariableSubstitutes(expression);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            openSessions.remove(this);
+            session.tearDown();
+        }
+    }
+
+    private void assertOpen() {
+        Preconditions.checkState(!closed, "HiveSession was closed");
+    }
+}
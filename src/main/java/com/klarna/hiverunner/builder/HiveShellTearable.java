@@ -19,6 +19,7 @@ package com.klarna.hiverunner.builder;
 import com.klarna.hiverunner.CommandShellEmulation;
 import com.klarna.hiverunner.HiveServerContainer;
 import com.klarna.hiverunner.HiveShellContainer;
+import com.klarna.hiverunner.SetupStateCache;
 
 import java.util.List;
 import java.util.Map;
@@ -30,12 +31,16 @@ class HiveShellTearable extends HiveShellBase implements HiveShellContainer {
 
     HiveShellTearable(HiveServerContainer hiveServerContainer, Map<String, String> hiveConf,
                       List<String> setupScripts, List<HiveResource> resources,
-                      List<String> scriptsUnderTest, CommandShellEmulation commandShellEmulation) {
-        super(hiveServerContainer, hiveConf, setupScripts, resources, scriptsUnderTest, commandShellEmulation);
+                      List<String> scriptsUnderTest, CommandShellEmulation commandShellEmulation,
+                      boolean lazyStart, SetupStateCache setupStateCache, int setupScriptParallelism,
+                      int insertParallelism) {
+        super(hiveServerContainer, hiveConf, setupScripts, resources, scriptsUnderTest, commandShellEmulation,
+                lazyStart, setupStateCache, setupScriptParallelism, insertParallelism);
     }
 
     @Override
     public void tearDown() {
+        closeOpenSessions();
         hiveServerContainer.tearDown();
     }
 }
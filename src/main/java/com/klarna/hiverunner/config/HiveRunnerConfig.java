@@ -3,6 +3,7 @@ package com.klarna.hiverunner.config;
 
 import com.google.common.base.Preconditions;
 import com.klarna.hiverunner.CommandShellEmulation;
+import com.klarna.hiverunner.HiveServerScope;
 
 import org.apache.hadoop.hive.conf.HiveConf;
 
@@ -29,6 +30,22 @@ import java.util.Properties;
  *              &lt;timeoutSeconds>30&lt;/timeoutSeconds>
  *              &lt;timeoutRetries>2&lt;/timeoutRetries>
  *              &lt;commandShellEmulation>BEELINE&lt;/commandShellEmulation>
+ *              &lt;hiveServerScope>CLASS&lt;/hiveServerScope>
+ *              &lt;hiveServerPoolSize>4&lt;/hiveServerPoolSize>
+ *              &lt;metastoreTemplateEnabled>true&lt;/metastoreTemplateEnabled>
+ *              &lt;hiveServerPreBoot>false&lt;/hiveServerPreBoot>
+ *              &lt;lazyStart>false&lt;/lazyStart>
+ *              &lt;parallelism>4&lt;/parallelism>
+ *              &lt;asyncTearDown>true&lt;/asyncTearDown>
+ *              &lt;asyncTearDownLimit>2&lt;/asyncTearDownLimit>
+ *              &lt;fetchSize>1000&lt;/fetchSize>
+ *              &lt;resultPrefetch>true&lt;/resultPrefetch>
+ *              &lt;maxOpenOperations>100&lt;/maxOpenOperations>
+ *              &lt;setupScriptParallelism>4&lt;/setupScriptParallelism>
+ *              &lt;resultCache>true&lt;/resultCache>
+ *              &lt;driverExecution>true&lt;/driverExecution>
+ *              &lt;insertParallelism>4&lt;/insertParallelism>
+ *              &lt;setupStateCacheDir>${project.build.directory}/hiverunner-setup-cache&lt;/setupStateCacheDir>
  *          &lt;/systemProperties>
  *      &lt;/configuration>
  * &lt;/plugin>
@@ -86,6 +103,151 @@ public class HiveRunnerConfig {
     public static final String COMMAND_SHELL_EMULATION_PROPERTY_NAME = "commandShellEmulation";
     public static final String COMMAND_SHELL_EMULATION_DEFAULT = CommandShellEmulation.HIVE_CLI.name();
 
+    /**
+     * The {@link HiveServerScope}, i.e. if a HiveServer should be started per test method or be reused by all test
+     * methods in a test class.
+     *
+     * Defaults to {@code METHOD}
+     */
+    public static final String HIVE_SERVER_SCOPE_PROPERTY_NAME = "hiveServerScope";
+    public static final String HIVE_SERVER_SCOPE_DEFAULT = HiveServerScope.METHOD.name();
+
+    /**
+     * Max number of idle HiveServers kept by the JVM wide pool used with {@link HiveServerScope#JVM}. The pool is sized
+     * by the config of the first test class leasing from it.
+     *
+     * Defaults to -1, i.e. derived from the max heap size
+     */
+    public static final String HIVE_SERVER_POOL_SIZE_PROPERTY_NAME = "hiveServerPoolSize";
+    public static final int HIVE_SERVER_POOL_SIZE_DEFAULT = -1;
+
+    /**
+     * Clone the metastore schema from a template built once per JVM and metastore configuration instead of letting
+     * DataNucleus create it for each HiveServer. Schema validation is switched off for cloned schemas unless
+     * overridden by a hiveconf_ property.
+     *
+     * Defaults to disabled
+     */
+    public static final String METASTORE_TEMPLATE_ENABLED_PROPERTY_NAME = "metastoreTemplateEnabled";
+    public static final boolean METASTORE_TEMPLATE_ENABLED_DEFAULT = false;
+
+    /**
+     * Boot the HiveServer of the next test method in the background while the current test method executes. Only
+     * applies to {@link HiveServerScope#METHOD}. Test case properties are applied per session rather than when the
+     * HiveServer is started.
+     *
+     * Defaults to disabled
+     */
+    public static final String HIVE_SERVER_PRE_BOOT_PROPERTY_NAME = "hiveServerPreBoot";
+    public static final boolean HIVE_SERVER_PRE_BOOT_DEFAULT = false;
+
+    /**
+     * Defer the HiveServer session, resources, setup scripts and scripts under test of a started HiveShell until the
+     * shell is first used, e.g. by execute, executeQuery, insertInto or getHiveConf. Tests that never touch hive never
+     * pay for it.
+     *
+     * Defaults to disabled
+     */
+    public static final String LAZY_START_PROPERTY_NAME = "lazyStart";
+    public static final boolean LAZY_START_DEFAULT = false;
+
+    /**
+     * Number of test methods executed concurrently by {@link com.klarna.hiverunner.ParallelStandaloneHiveRunner}.
+     *
+     * Defaults to -1, i.e. the number of available processors
+     */
+    public static final String PARALLELISM_PROPERTY_NAME = "parallelism";
+    public static final int PARALLELISM_DEFAULT = -1;
+
+    /**
+     * Directory of the on disk cache of HiveServer states after the setup scripts have been executed and the resources
+     * have been created, see {@link com.klarna.hiverunner.SetupStateCache}. Test methods with the same setup restore
+     * the cached state instead of executing the setup scripts. Only applies to {@link HiveServerScope#METHOD}.
+     *
+     * Defaults to empty, i.e. disabled
+     */
+    public static final String SETUP_STATE_CACHE_DIR_PROPERTY_NAME = "setupStateCacheDir";
+    public static final String SETUP_STATE_CACHE_DIR_DEFAULT = "";
+
+    /**
+     * Tear down the HiveServer and delete the base dir of a test method on a background thread while the next test
+     * method executes. Only applies to {@link HiveServerScope#METHOD} with the mr execution engine since running tez
+     * jobs can't be told apart between HiveServers.
+     *
+     * Defaults to disabled
+     */
+    public static final String ASYNC_TEAR_DOWN_PROPERTY_NAME = "asyncTearDown";
+    public static final boolean ASYNC_TEAR_DOWN_DEFAULT = false;
+
+    /**
+     * Max number of background tear downs in flight. The next test method waits for a tear down to finish once the
+     * limit is reached.
+     *
+     * Defaults to 2
+     */
+    public static final String ASYNC_TEAR_DOWN_LIMIT_PROPERTY_NAME = "asyncTearDownLimit";
+    public static final int ASYNC_TEAR_DOWN_LIMIT_DEFAULT = 2;
+
+    /**
+     * Number of rows fetched from the HiveServer per page of a query result. Larger pages mean fewer round trips for
+     * big results.
+     *
+     * Defaults to 100
+     */
+    public static final String FETCH_SIZE_PROPERTY_NAME = "fetchSize";
+    public static final int FETCH_SIZE_DEFAULT = 100;
+
+    /**
+     * Fetch the next page of a query result on a helper thread while the current page is consumed.
+     *
+     * Defaults to disabled
+     */
+    public static final String RESULT_PREFETCH_PROPERTY_NAME = "resultPrefetch";
+    public static final boolean RESULT_PREFETCH_DEFAULT = false;
+
+    /**
+     * Max number of query operations that may be open at once in a session. An operation stays open until its result
+     * is drained or its iterator is closed. A value less than 1 means no limit.
+     *
+     * Defaults to 100
+     */
+    public static final String MAX_OPEN_OPERATIONS_PROPERTY_NAME = "maxOpenOperations";
+    public static final int MAX_OPEN_OPERATIONS_DEFAULT = 100;
+
+    /**
+     * Max number of independent setup script statements executed concurrently. Statements reading or writing the same
+     * tables are still executed in script order.
+     *
+     * Defaults to 1, i.e. one statement at a time
+     */
+    public static final String SETUP_SCRIPT_PARALLELISM_PROPERTY_NAME = "setupScriptParallelism";
+    public static final int SETUP_SCRIPT_PARALLELISM_DEFAULT = 1;
+
+    /**
+     * Cache the results of deterministic, read only queries until a statement writes one of the tables they read.
+     *
+     * Defaults to disabled
+     */
+    public static final String RESULT_CACHE_PROPERTY_NAME = "resultCache";
+    public static final boolean RESULT_CACHE_DEFAULT = false;
+
+    /**
+     * Execute statements with a Hive Driver on the test thread instead of as HiveServer2 operations, skipping the
+     * operation bookkeeping of the CLIService.
+     *
+     * Defaults to disabled
+     */
+    public static final String DRIVER_EXECUTION_PROPERTY_NAME = "driverExecution";
+    public static final boolean DRIVER_EXECUTION_DEFAULT = false;
+
+    /**
+     * Max number of partitions written concurrently by HiveShell.insertInto.
+     *
+     * Defaults to 1, i.e. one partition at a time
+     */
+    public static final String INSERT_PARALLELISM_PROPERTY_NAME = "insertParallelism";
+    public static final int INSERT_PARALLELISM_DEFAULT = 1;
+
     private Map<String, Object> config = new HashMap<>();
 
     private Map<String, String> hiveConfSystemOverride = new HashMap<>();
@@ -107,6 +269,22 @@ public class HiveRunnerConfig {
         config.put(TIMEOUT_RETRIES_PROPERTY_NAME, load(TIMEOUT_RETRIES_PROPERTY_NAME, TIMEOUT_RETRIES_DEFAULT, systemProperties));
         config.put(TIMEOUT_SECONDS_PROPERTY_NAME, load(TIMEOUT_SECONDS_PROPERTY_NAME, TIMEOUT_SECONDS_DEFAULT, systemProperties));
         config.put(COMMAND_SHELL_EMULATION_PROPERTY_NAME, load(COMMAND_SHELL_EMULATION_PROPERTY_NAME, COMMAND_SHELL_EMULATION_DEFAULT, systemProperties));
+        config.put(HIVE_SERVER_SCOPE_PROPERTY_NAME, load(HIVE_SERVER_SCOPE_PROPERTY_NAME, HIVE_SERVER_SCOPE_DEFAULT, systemProperties));
+        config.put(HIVE_SERVER_POOL_SIZE_PROPERTY_NAME, load(HIVE_SERVER_POOL_SIZE_PROPERTY_NAME, HIVE_SERVER_POOL_SIZE_DEFAULT, systemProperties));
+        config.put(METASTORE_TEMPLATE_ENABLED_PROPERTY_NAME, load(METASTORE_TEMPLATE_ENABLED_PROPERTY_NAME, METASTORE_TEMPLATE_ENABLED_DEFAULT, systemProperties));
+        config.put(HIVE_SERVER_PRE_BOOT_PROPERTY_NAME, load(HIVE_SERVER_PRE_BOOT_PROPERTY_NAME, HIVE_SERVER_PRE_BOOT_DEFAULT, systemProperties));
+        config.put(LAZY_START_PROPERTY_NAME, load(LAZY_START_PROPERTY_NAME, LAZY_START_DEFAULT, systemProperties));
+        config.put(PARALLELISM_PROPERTY_NAME, load(PARALLELISM_PROPERTY_NAME, PARALLELISM_DEFAULT, systemProperties));
+        config.put(SETUP_STATE_CACHE_DIR_PROPERTY_NAME, load(SETUP_STATE_CACHE_DIR_PROPERTY_NAME, SETUP_STATE_CACHE_DIR_DEFAULT, systemProperties));
+        config.put(ASYNC_TEAR_DOWN_PROPERTY_NAME, load(ASYNC_TEAR_DOWN_PROPERTY_NAME, ASYNC_TEAR_DOWN_DEFAULT, systemProperties));
+        config.put(ASYNC_TEAR_DOWN_LIMIT_PROPERTY_NAME, load(ASYNC_TEAR_DOWN_LIMIT_PROPERTY_NAME, ASYNC_TEAR_DOWN_LIMIT_DEFAULT, systemProperties));
+        config.put(FETCH_SIZE_PROPERTY_NAME, load(FETCH_SIZE_PROPERTY_NAME, FETCH_SIZE_DEFAULT, systemProperties));
+        config.put(RESULT_PREFETCH_PROPERTY_NAME, load(RESULT_PREFETCH_PROPERTY_NAME, RESULT_PREFETCH_DEFAULT, systemProperties));
+        config.put(MAX_OPEN_OPERATIONS_PROPERTY_NAME, load(MAX_OPEN_OPERATIONS_PROPERTY_NAME, MAX_OPEN_OPERATIONS_DEFAULT, systemProperties));
+        config.put(SETUP_SCRIPT_PARALLELISM_PROPERTY_NAME, load(SETUP_SCRIPT_PARALLELISM_PROPERTY_NAME, SETUP_SCRIPT_PARALLELISM_DEFAULT, systemProperties));
+        config.put(RESULT_CACHE_PROPERTY_NAME, load(RESULT_CACHE_PROPERTY_NAME, RESULT_CACHE_DEFAULT, systemProperties));
+        config.put(DRIVER_EXECUTION_PROPERTY_NAME, load(DRIVER_EXECUTION_PROPERTY_NAME, DRIVER_EXECUTION_DEFAULT, systemProperties));
+        config.put(INSERT_PARALLELISM_PROPERTY_NAME, load(INSERT_PARALLELISM_PROPERTY_NAME, INSERT_PARALLELISM_DEFAULT, systemProperties));
 
         hiveConfSystemOverride = loadHiveConfSystemOverrides(systemProperties);
     }
@@ -143,6 +321,88 @@ public class HiveRunnerConfig {
         return CommandShellEmulation.valueOf(getString(COMMAND_SHELL_EMULATION_PROPERTY_NAME).toUpperCase());
     }
 
+    /**
+     * Determines if a HiveServer is started for each test method, shared by all test methods in a test class or
+     * leased from a JVM wide pool.
+     */
+    public HiveServerScope getHiveServerScope() {
+        return HiveServerScope.valueOf(getString(HIVE_SERVER_SCOPE_PROPERTY_NAME).toUpperCase());
+    }
+
+    /**
+     * Max number of idle HiveServers kept by the JVM wide pool. A value less than 1 means that the pool size is
+     * derived from the max heap size.
+     */
+    public int getHiveServerPoolSize() {
+        return getInteger(HIVE_SERVER_POOL_SIZE_PROPERTY_NAME);
+    }
+
+    public boolean isMetaStoreTemplateEnabled() {
+        return getBoolean(METASTORE_TEMPLATE_ENABLED_PROPERTY_NAME);
+    }
+
+    public boolean isHiveServerPreBootEnabled() {
+        return getBoolean(HIVE_SERVER_PRE_BOOT_PROPERTY_NAME);
+    }
+
+    public boolean isLazyStartEnabled() {
+        return getBoolean(LAZY_START_PROPERTY_NAME);
+    }
+
+    /**
+     * Number of test methods executed concurrently by {@link com.klarna.hiverunner.ParallelStandaloneHiveRunner}. A
+     * value less than 1 means the number of available processors.
+     */
+    public int getParallelism() {
+        return getInteger(PARALLELISM_PROPERTY_NAME);
+    }
+
+    /**
+     * Directory of the setup state cache. An empty value means that the cache is disabled.
+     */
+    public String getSetupStateCacheDir() {
+        return getString(SETUP_STATE_CACHE_DIR_PROPERTY_NAME);
+    }
+
+    public boolean isAsyncTearDownEnabled() {
+        return getBoolean(ASYNC_TEAR_DOWN_PROPERTY_NAME);
+    }
+
+    /**
+     * Max number of background tear downs in flight, see {@link #isAsyncTearDownEnabled()}.
+     */
+    public int getAsyncTearDownLimit() {
+        return getInteger(ASYNC_TEAR_DOWN_LIMIT_PROPERTY_NAME);
+    }
+
+    public int getFetchSize() {
+        return getInteger(FETCH_SIZE_PROPERTY_NAME);
+    }
+
+    public boolean isResultPrefetchEnabled() {
+        return getBoolean(RESULT_PREFETCH_PROPERTY_NAME);
+    }
+
+    public int getMaxOpenOperations() {
+        return getInteger(MAX_OPEN_OPERATIONS_PROPERTY_NAME);
+    }
+
+    public int getSetupScriptParallelism() {
+        return getInteger(SETUP_SCRIPT_PARALLELISM_PROPERTY_NAME);
+    }
+
+    public boolean isResultCacheEnabled() {
+        return getBoolean(RESULT_CACHE_PROPERTY_NAME);
+    }
+
+    public boolean isDriverExecutionEnabled() {
+        return getBoolean(DRIVER_EXECUTION_PROPERTY_NAME);
+    }
+
+    public int getInsertParallelism() {
+        return getInteger(INSERT_PARALLELISM_PROPERTY_NAME);
+    }
+
     public void setTimeoutEnabled(boolean isEnabled) {
         config.put(ENABLE_TIMEOUT_PROPERTY_NAME, isEnabled);
     }
@@ -162,6 +422,70 @@ public class HiveRunnerConfig {
     public void setCommandShellEmulation(CommandShellEmulation commandShellEmulation) {
         config.put(COMMAND_SHELL_EMULATION_PROPERTY_NAME, commandShellEmulation.name());
     }
+
+    public void setHiveServerScope(HiveServerScope hiveServerScope) {
+        config.put(HIVE_SERVER_SCOPE_PROPERTY_NAME, hiveServerScope.name());
+    }
+
+    public void setHiveServerPoolSize(int poolSize) {
+        config.put(HIVE_SERVER_POOL_SIZE_PROPERTY_NAME, poolSize);
+    }
+
+    public void setMetaStoreTemplateEnabled(boolean isEnabled) {
+        config.put(METASTORE_TEMPLATE_ENABLED_PROPERTY_NAME, isEnabled);
+    }
+
+    public void setHiveServerPreBootEnabled(boolean isEnabled) {
+        config.put(HIVE_SERVER_PRE_BOOT_PROPERTY_NAME, isEnabled);
+    }
+
+    public void setLazyStartEnabled(boolean isEnabled) {
+        config.put(LAZY_START_PROPERTY_NAME, isEnabled);
+    }
+
+    public void setParallelism(int parallelism) {
+        config.put(PARALLELISM_PROPERTY_NAME, parallelism);
+    }
+
+    public void setSetupStateCacheDir(String directory) {
+        config.put(SETUP_STATE_CACHE_DIR_PROPERTY_NAME, directory);
+    }
+
+    public void setAsyncTearDownEnabled(boolean isEnabled) {
+        config.put(ASYNC_TEAR_DOWN_PROPERTY_NAME, isEnabled);
+    }
+
+    public void setAsyncTearDownLimit(int limit) {
+        config.put(ASYNC_TEAR_DOWN_LIMIT_PROPERTY_NAME, limit);
+    }
+
+    public void setFetchSize(int fetchSize) {
+        config.put(FETCH_SIZE_PROPERTY_NAME, fetchSize);
+    }
+
+    public void setResultPrefetchEnabled(boolean isEnabled) {
+        config.put(RESULT_PREFETCH_PROPERTY_NAME, isEnabled);
+    }
+
+    public void setMaxOpenOperations(int maxOpenOperations) {
+        config.put(MAX_OPEN_OPERATIONS_PROPERTY_NAME, maxOpenOperations);
+    }
+
+    public void setSetupScriptParallelism(int parallelism) {
+        config.put(SETUP_SCRIPT_PARALLELISM_PROPERTY_NAME, parallelism);
+    }
+
+    public void setResultCacheEnabled(boolean isEnabled) {
+        config.put(RESULT_CACHE_PROPERTY_NAME, isEnabled);
+    }
+
+    public void setDriverExecutionEnabled(boolean isEnabled) {
+        config.put(DRIVER_EXECUTION_PROPERTY_NAME, isEnabled);
+    }
+
+    public void setInsertParallelism(int parallelism) {
+        config.put(INSERT_PARALLELISM_PROPERTY_NAME, parallelism);
+    }
     
     /**
      * Copy values from the inserted config to this config. Note that if properties has not been explicitly set,
@@ -1,6 +1,7 @@
 package com.klarna.hiverunner.data;
 
 import java.io.File;
+import java.util.Iterator;
 
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hive.hcatalog.api.HCatClient;
@@ -16,6 +17,7 @@ public final class InsertIntoTable {
 
   private final TableDataBuilder builder;
   private final TableDataInserter inserter;
+  private final Runnable afterCommit;
 
   /**
    * Factory method for creating an {@link InsertIntoTable}.
@@ -28,9 +30,39 @@ public final class InsertIntoTable {
    * @return InsertIntoTable
    */
   public static InsertIntoTable newInstance(String databaseName, String tableName, HiveConf conf) {
+    return newInstance(databaseName, tableName, conf, null);
+  }
+
+  /**
+   * Factory method for creating an {@link InsertIntoTable} that notifies a listener once the rows are inserted.
+   *
+   * @param databaseName The database name.
+   * @param tableName The table name.
+   * @param conf The {@link HiveConf}.
+   * @param afterCommit Called after each commit, may be null.
+   * @return InsertIntoTable
+   */
+  public static InsertIntoTable newInstance(String databaseName, String tableName, HiveConf conf,
+      Runnable afterCommit) {
+    return newInstance(databaseName, tableName, conf, 1, afterCommit);
+  }
+
+  /**
+   * Factory method for creating an {@link InsertIntoTable} that writes up to {@code parallelism} partitions
+   * concurrently and notifies a listener once the rows are inserted.
+   *
+   * @param databaseName The database name.
+   * @param tableName The table name.
+   * @param conf The {@link HiveConf}.
+   * @param parallelism Max number of partitions written concurrently.
+   * @param afterCommit Called after each commit, may be null.
+   * @return InsertIntoTable
+   */
+  public static InsertIntoTable newInstance(String databaseName, String tableName, HiveConf conf, int parallelism,
+      Runnable afterCommit) {
     TableDataBuilder builder = new TableDataBuilder(getHCatTable(databaseName, tableName, conf));
-    TableDataInserter inserter = new TableDataInserter(databaseName, tableName, conf);
-    return new InsertIntoTable(builder, inserter);
+    TableDataInserter inserter = new TableDataInserter(databaseName, tableName, conf, parallelism);
+    return new InsertIntoTable(builder, inserter, afterCommit);
   }
 
   private static HCatTable getHCatTable(String databaseName, String tableName, HiveConf conf) {
@@ -52,8 +84,13 @@ public final class InsertIntoTable {
   }
 
   InsertIntoTable(TableDataBuilder builder, TableDataInserter inserter) {
+    this(builder, inserter, null);
+  }
+
+  InsertIntoTable(TableDataBuilder builder, TableDataInserter inserter, Runnable afterCommit) {
     this.builder = builder;
     this.inserter = inserter;
+    this.afterCommit = afterCommit;
   }
 
   /**
@@ -146,9 +183,24 @@ public final class InsertIntoTable {
   }
 
   /**
-   * Adds all rows from the file specified, using the provided parser.
+   * Adds all rows from the delimited file specified, or from every file in the directory specified, parsing chunks of
+   * each file on up to {@code parallelism} threads. Rows are added in file order.
+   *
+   * @param file The file or directory to read the data from.
+   * @param delimiter A column delimiter.
+   * @param nullValue Value to be treated as null in the source data.
+   * @param parallelism Max number of threads parsing a file.
+   * @return {@code this}
+   */
+  public InsertIntoTable addRowsFromDelimited(File file, String delimiter, Object nullValue, int parallelism) {
+    builder.addRowsFromDelimited(file, delimiter, nullValue, parallelism);
+    return this;
+  }
+
+  /**
+   * Adds all rows from the file specified, or from every file in the directory specified, using the provided parser.
    *
-   * @param file File to read the data from.
+   * @param file File or directory to read the data from.
    * @param fileParser Parser to be used to parse the file.
    * @return {@code this}
    */
@@ -157,6 +209,28 @@ public final class InsertIntoTable {
     return this;
   }
 
+  /**
+   * Adds all rows of the iterator. Rows are consumed one at a time, so the source does not have to fit in memory.
+   *
+   * @param rows The rows, with one value for each of the current columns.
+   * @return {@code this}
+   */
+  public InsertIntoTable addRows(Iterator<Object[]> rows) {
+    builder.addRows(rows);
+    return this;
+  }
+
+  /**
+   * Sets the number of rows held in memory before all rows are spilled to local files. Defaults to 100000.
+   *
+   * @param rows The max number of rows held in memory.
+   * @return {@code this}
+   */
+  public InsertIntoTable withSpillThreshold(int rows) {
+    builder.withSpillThreshold(rows);
+    return this;
+  }
+
   /**
    * Flushes the current row and creates a new row with the same values.
    *
@@ -183,9 +257,22 @@ public final class InsertIntoTable {
   /**
    * Inserts the data into the table. This does not replace any existing data, but appends new part files to the
    * table/partition location(s).
+   *
+   * <p/>
+   * The rows are discarded by the commit, whether it succeeds or not, so rows added after a commit are inserted by
+   * the next commit.
+   *
+   * @throws RuntimeException listing every partition that failed, after all partitions have been tried.
    */
   public void commit() {
-    inserter.insert(builder.build());
+    try {
+      inserter.insert(builder.build());
+    } finally {
+      builder.clear();
+      if (afterCommit != null) {
+        afterCommit.run();
+      }
+    }
   }
 
 }
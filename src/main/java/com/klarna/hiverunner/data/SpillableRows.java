@@ -0,0 +1,149 @@
+package com.klarna.hiverunner.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.hive.hcatalog.data.DefaultHCatRecord;
+import org.apache.hive.hcatalog.data.HCatRecord;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * The rows of one partition. Rows are buffered on the heap until {@link #spill()} appends them to a local file, from
+ * which they are read back as the rows are iterated. Rows are returned in the order they were added.
+ */
+class SpillableRows extends AbstractCollection<HCatRecord> {
+
+  private final String name;
+  private final List<HCatRecord> buffer = new ArrayList<>();
+  private File spillFile;
+  private int spilled;
+
+  /**
+   * @param name Used in the name of the spill file.
+   */
+  SpillableRows(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public boolean add(HCatRecord row) {
+    return buffer.add(row);
+  }
+
+  @Override
+  public int size() {
+    return spilled + buffer.size();
+  }
+
+  /**
+   * @return The number of rows buffered on the heap.
+   */
+  int buffered() {
+    return buffer.size();
+  }
+
+  /**
+   * Append the buffered rows to the spill file and release them.
+   */
+  void spill() {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    try {
+      if (spillFile == null) {
+        spillFile = File.createTempFile("hiverunner-" + name + "-", ".rows");
+        spillFile.deleteOnExit();
+      }
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(spillFile, true)))) {
+        for (HCatRecord row : buffer) {
+          row.write(out);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to spill rows of " + name + " to " + spillFile, e);
+    }
+    spilled += buffer.size();
+    buffer.clear();
+  }
+
+  /**
+   * Delete the spill file, if any. The rows may not be used after this.
+   */
+  void delete() {
+    if (spillFile != null && !spillFile.delete() && spillFile.exists()) {
+      spillFile.deleteOnExit();
+    }
+    spillFile = null;
+    spilled = 0;
+    buffer.clear();
+  }
+
+  @Override
+  public Iterator<HCatRecord> iterator() {
+    Iterator<HCatRecord> buffered = Collections.unmodifiableList(buffer).iterator();
+    if (spilled == 0) {
+      return buffered;
+    }
+    return Iterators.concat(new SpillFileIterator(spillFile, spilled), buffered);
+  }
+
+  private static final class SpillFileIterator implements Iterator<HCatRecord> {
+
+    private final File file;
+    private int remaining;
+    private DataInputStream in;
+
+    private SpillFileIterator(File file, int rows) {
+      this.file = file;
+      this.remaining = rows;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public HCatRecord next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        if (in == null) {
+          in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+        HCatRecord row = new DefaultHCatRecord();
+        row.readFields(in);
+        if (--remaining == 0) {
+          in.close();
+        }
+        return row;
+      } catch (EOFException e) {
+        throw new IllegalStateException("Spill file " + file + " ended before all rows were read", e);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read spilled rows from " + file, e);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
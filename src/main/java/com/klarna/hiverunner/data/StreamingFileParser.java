@@ -0,0 +1,25 @@
+package com.klarna.hiverunner.data;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.hive.hcatalog.data.schema.HCatSchema;
+
+import com.klarna.hiverunner.CloseableIterator;
+
+/**
+ * A {@link FileParser} that can return the rows of a file one at a time, so that files larger than the heap can be
+ * inserted with {@link InsertIntoTable#addRowsFrom(File, FileParser)}.
+ */
+public interface StreamingFileParser extends FileParser {
+
+  /**
+   * Parses the given file as the returned iterator advances. The iterator must be closed to release the file.
+   *
+   * @param file The file to be parsed.
+   * @param schema The full schema of the Hive table.
+   * @param names The requested field names.
+   * @return A {@link CloseableIterator} of rows, each represented by an {@link Object} array.
+   */
+  CloseableIterator<Object[]> iterate(File file, HCatSchema schema, List<String> names);
+}
@@ -6,6 +6,10 @@ import static com.google.common.base.Preconditions.checkState;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -18,22 +22,35 @@ import org.apache.hive.hcatalog.data.HCatRecord;
 import org.apache.hive.hcatalog.data.schema.HCatFieldSchema;
 import org.apache.hive.hcatalog.data.schema.HCatSchema;
 
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.ImmutableMultimap.Builder;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.klarna.hiverunner.CloseableIterator;
 
+/**
+ * Collects the rows to insert into a table by partition. Once more than the spill threshold of rows are held on the
+ * heap, the rows of every partition are spilled to local files, so the number of rows is limited by disk rather than
+ * by heap.
+ */
 class TableDataBuilder {
 
-  private final Builder<Map<String, String>, HCatRecord> rowsBuilder = ImmutableMultimap.builder();
+  static final int DEFAULT_SPILL_THRESHOLD = 100000;
+
+  private final String tableName;
   private final HCatSchema schema;
   private final List<HCatFieldSchema> partitionColumns;
+  private final List<SpillableRows> partitions = new ArrayList<>();
+  private Multimap<Map<String, String>, HCatRecord> rows;
+  private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+  private int buffered;
 
   private HCatRecord row;
   private List<String> names;
 
   TableDataBuilder(HCatTable table) {
+    tableName = table.getDbName() + "." + table.getTableName();
     schema = new HCatSchema(ImmutableList
         .<HCatFieldSchema> builder()
         .addAll(table.getCols())
@@ -41,6 +58,13 @@ class TableDataBuilder {
         .build());
     partitionColumns = table.getPartCols();
     withAllColumns();
+    clear();
+  }
+
+  TableDataBuilder withSpillThreshold(int rows) {
+    checkArgument(rows > 0, "Spill threshold must be positive: %s", rows);
+    spillThreshold = rows;
+    return this;
   }
 
   TableDataBuilder withColumns(String... names) {
@@ -84,22 +108,61 @@ class TableDataBuilder {
     return addRowsFrom(file, new TsvFileParser().withDelimiter(delimiter).withNullValue(nullValue));
   }
 
+  TableDataBuilder addRowsFromDelimited(File file, String delimiter, Object nullValue, int parallelism) {
+    return addRowsFrom(file, new TsvFileParser().withDelimiter(delimiter).withNullValue(nullValue)
+        .withParallelism(parallelism));
+  }
+
+  /**
+   * Adds the rows of a file, or of every file in a directory in name order. Files in a directory starting with '.' or
+   * '_' are skipped. With a header, the columns are taken from the first file.
+   */
   TableDataBuilder addRowsFrom(File file, FileParser fileParser) {
-    if (fileParser.hasColumnNames()) {
+    List<File> files = dataFiles(file);
+    if (fileParser.hasColumnNames() && !files.isEmpty()) {
       checkArgument(names.equals(schema.getFieldNames()), "Manual column spec and header column spec are mutually exclusive");
-      List<String> columns = fileParser.getColumnNames(file);
+      List<String> columns = fileParser.getColumnNames(files.get(0));
       withColumns(columns.toArray(new String[columns.size()]));
     }
-    return addRows(fileParser.parse(file, schema, names));
+    for (File dataFile : files) {
+      if (fileParser instanceof StreamingFileParser) {
+        try (CloseableIterator<Object[]> rows = ((StreamingFileParser) fileParser).iterate(dataFile, schema, names)) {
+          addRows(rows);
+        }
+      } else {
+        addRows(fileParser.parse(dataFile, schema, names));
+      }
+    }
+    return this;
   }
 
-  private TableDataBuilder addRows(List<Object[]> rows) {
-    for (Object[] row : rows) {
-      addRow(row);
+  private static List<File> dataFiles(File file) {
+    if (!file.isDirectory()) {
+      return Collections.singletonList(file);
+    }
+    File[] children = file.listFiles();
+    checkState(children != null, "Unable to list files in %s", file);
+    List<File> files = new ArrayList<>();
+    for (File child : children) {
+      if (child.isFile() && !child.getName().startsWith(".") && !child.getName().startsWith("_")) {
+        files.add(child);
+      }
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  TableDataBuilder addRows(Iterator<Object[]> rows) {
+    while (rows.hasNext()) {
+      addRow(rows.next());
     }
     return this;
   }
 
+  private TableDataBuilder addRows(List<Object[]> rows) {
+    return addRows(rows.iterator());
+  }
+
   TableDataBuilder copyRow() {
     checkState(row != null, "No previous row to copy.");
     HCatRecord copy = new DefaultHCatRecord(new ArrayList<>(row.getAll()));
@@ -142,7 +205,13 @@ class TableDataBuilder {
 
   private void flushRow() {
     if (row != null) {
-      rowsBuilder.put(createPartitionSpec(), row);
+      rows.put(createPartitionSpec(), row);
+      if (++buffered >= spillThreshold) {
+        for (SpillableRows partition : partitions) {
+          partition.spill();
+        }
+        buffered = 0;
+      }
     }
   }
 
@@ -157,9 +226,33 @@ class TableDataBuilder {
     return builder.build();
   }
 
+  /**
+   * @return The rows by partition spec, valid until {@link #clear()} is called.
+   */
   Multimap<Map<String, String>, HCatRecord> build() {
     flushRow();
-    return rowsBuilder.build();
+    return Multimaps.unmodifiableMultimap(rows);
+  }
+
+  /**
+   * Discard all rows, deleting any spill files.
+   */
+  void clear() {
+    for (SpillableRows partition : partitions) {
+      partition.delete();
+    }
+    partitions.clear();
+    buffered = 0;
+    row = null;
+    rows = Multimaps.newMultimap(new LinkedHashMap<Map<String, String>, Collection<HCatRecord>>(),
+        new Supplier<SpillableRows>() {
+          @Override
+          public SpillableRows get() {
+            SpillableRows partition = new SpillableRows(tableName);
+            partitions.add(partition);
+            return partition;
+          }
+        });
   }
 
   private void checkColumn(String name) {
@@ -1,9 +1,45 @@
 package com.klarna.hiverunner.data;
 
-import java.util.Iterator;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.MetaStoreUtils;
+import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.serde2.Serializer;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hive.hcatalog.common.HCatException;
 import org.apache.hive.hcatalog.data.HCatRecord;
 import org.apache.hive.hcatalog.data.transfer.DataTransferFactory;
@@ -14,42 +50,366 @@ import org.apache.hive.hcatalog.data.transfer.WriterContext;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 
+/**
+ * Inserts rows into a table.
+ * <p/>
+ * Rows of native tables are serialized with the table's SerDe and written straight into the table or partition
+ * location with the table's OutputFormat, one file per partition, after which the new partitions are added to the
+ * metastore in one call. Existing partitions are written with their own SerDe and OutputFormat, which may differ from
+ * the table's after e.g. 'alter table set fileformat'. Tables with a storage handler, bucketed tables, transactional
+ * tables and existing partitions with other columns than the table are written through the HCatWriter instead.
+ * <p/>
+ * Partitions are written by up to parallelism threads. A failed partition does not stop the others, the failures of
+ * all partitions are reported together once every partition has been tried.
+ */
 class TableDataInserter {
 
   private final String databaseName;
   private final String tableName;
+  private final HiveConf conf;
+  private final int parallelism;
   private final Map<String, String> config;
 
   TableDataInserter(String databaseName, String tableName, HiveConf conf) {
+    this(databaseName, tableName, conf, 1);
+  }
+
+  TableDataInserter(String databaseName, String tableName, HiveConf conf, int parallelism) {
+    checkArgument(parallelism > 0, "Parallelism must be positive: %s", parallelism);
     this.databaseName = databaseName;
     this.tableName = tableName;
+    this.conf = conf;
+    this.parallelism = parallelism;
     config = Maps.fromProperties(conf.getAllProperties());
   }
 
   void insert(Multimap<Map<String, String>, HCatRecord> data) {
-    Iterator<Map<String, String>> iterator = data.keySet().iterator();
-    while (iterator.hasNext()) {
-      Map<String, String> partitionSpec = iterator.next();
-      insert(partitionSpec, data.get(partitionSpec));
+    Table table = getTable();
+    if (isBulkLoadable(table)) {
+      bulkLoad(table, data);
+    } else {
+      hcatLoad(data);
     }
   }
 
-  private void insert(Map<String, String> partitionSpec, Iterable<HCatRecord> rows) {
+  private void hcatLoad(final Multimap<Map<String, String>, HCatRecord> data) {
+    final Object metaStoreLock = new Object();
+    Map<Map<String, String>, Throwable> failures = forEachPartition(data.keySet(), new PartitionTask() {
+      @Override
+      public void run(Map<String, String> partitionSpec) throws Exception {
+        insert(partitionSpec, data.get(partitionSpec), metaStoreLock);
+      }
+    });
+    checkFailures(failures);
+  }
+
+  private void insert(Map<String, String> partitionSpec, Iterable<HCatRecord> rows, Object metaStoreLock)
+      throws HCatException {
     WriteEntity entity = new WriteEntity.Builder()
         .withDatabase(databaseName)
         .withTable(tableName)
         .withPartition(partitionSpec)
         .build();
 
-    try {
-      HCatWriter master = DataTransferFactory.getHCatWriter(entity, config);
-      WriterContext context = master.prepareWrite();
-      HCatWriter writer = DataTransferFactory.getHCatWriter(context);
-      writer.write(rows.iterator());
+    // Only the writing is done concurrently, the metastore is updated by one partition at a time
+    HCatWriter master = DataTransferFactory.getHCatWriter(entity, config);
+    WriterContext context;
+    synchronized (metaStoreLock) {
+      context = master.prepareWrite();
+    }
+    HCatWriter writer = DataTransferFactory.getHCatWriter(context);
+    writer.write(rows.iterator());
+    synchronized (metaStoreLock) {
       master.commit(context);
-    } catch (HCatException e) {
+    }
+  }
+
+  private Table getTable() {
+    try {
+      return Hive.get(conf).getTable(databaseName, tableName);
+    } catch (Exception e) {
+      throw new RuntimeException("Unable to get table from the metastore.", e);
+    }
+  }
+
+  private static boolean isBulkLoadable(Table table) {
+    return table.getStorageHandler() == null
+        && table.getNumBuckets() <= 0
+        && !"true".equalsIgnoreCase(table.getProperty("transactional"))
+        && HiveOutputFormat.class.isAssignableFrom(table.getOutputFormatClass());
+  }
+
+  private void bulkLoad(final Table table, final Multimap<Map<String, String>, HCatRecord> data) {
+    // Partition targets are resolved up front, so that the partitions can be written without the metastore
+    final Map<Map<String, String>, Target> targets = new HashMap<>();
+    final Map<Map<String, String>, Partition> newPartitions = new HashMap<>();
+    IMetaStoreClient client;
+    try {
+      client = Hive.get(conf).getMSC();
+      if (table.isPartitioned()) {
+        Map<List<String>, Partition> existingPartitions = new HashMap<>();
+        for (Partition partition : client.listPartitions(databaseName, tableName, (short) -1)) {
+          existingPartitions.put(partition.getValues(), partition);
+        }
+        for (Map<String, String> partitionSpec : data.keySet()) {
+          Map<String, String> orderedSpec = orderedPartitionSpec(table, partitionSpec);
+          Partition partition = existingPartitions.get(new ArrayList<>(orderedSpec.values()));
+          if (partition == null) {
+            Path location = new Path(table.getDataLocation(), Warehouse.makePartPath(orderedSpec));
+            newPartitions.put(partitionSpec, newPartition(table, orderedSpec, location));
+            targets.put(partitionSpec, Target.of(table, location));
+          } else {
+            Target target = Target.of(table, partition);
+            if (target == null) {
+              hcatLoad(data);
+              return;
+            }
+            targets.put(partitionSpec, target);
+          }
+        }
+      } else {
+        for (Map<String, String> partitionSpec : data.keySet()) {
+          targets.put(partitionSpec, Target.of(table, table.getDataLocation()));
+        }
+      }
+    } catch (Exception e) {
       throw new RuntimeException("An error occurred while inserting data to " + databaseName + "." + tableName, e);
     }
+
+    Map<Map<String, String>, Throwable> failures = forEachPartition(data.keySet(), new PartitionTask() {
+      @Override
+      public void run(Map<String, String> partitionSpec) throws Exception {
+        write(targets.get(partitionSpec), data.get(partitionSpec));
+      }
+    });
+
+    // Partitions that were written are added even if others failed, in one call
+    List<Partition> writtenPartitions = new ArrayList<>();
+    for (Map.Entry<Map<String, String>, Partition> partition : newPartitions.entrySet()) {
+      if (!failures.containsKey(partition.getKey())) {
+        writtenPartitions.add(partition.getValue());
+      }
+    }
+    if (!writtenPartitions.isEmpty()) {
+      try {
+        client.add_partitions(writtenPartitions, true, false);
+      } catch (Exception e) {
+        throw new RuntimeException("An error occurred while adding partitions to " + databaseName + "." + tableName,
+            e);
+      }
+    }
+    checkFailures(failures);
+  }
+
+  /**
+   * Run the task for each partition, using up to {@link #parallelism} threads, and return the failures by partition.
+   */
+  private Map<Map<String, String>, Throwable> forEachPartition(Collection<Map<String, String>> partitionSpecs,
+      final PartitionTask task) {
+    final Map<Map<String, String>, Throwable> failures = new ConcurrentHashMap<>();
+    if (parallelism == 1 || partitionSpecs.size() <= 1) {
+      for (Map<String, String> partitionSpec : partitionSpecs) {
+        try {
+          task.run(partitionSpec);
+        } catch (Exception e) {
+          failures.put(partitionSpec, e);
+        }
+      }
+      return failures;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, partitionSpecs.size()),
+        new ThreadFactory() {
+          private final AtomicInteger threadCounter = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "HiveRunner insert " + databaseName + "." + tableName + "-"
+                + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    try {
+      for (final Map<String, String> partitionSpec : partitionSpecs) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              task.run(partitionSpec);
+            } catch (Throwable e) {
+              failures.put(partitionSpec, e);
+            }
+          }
+        });
+      }
+    } finally {
+      executor.shutdown();
+    }
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      executor.shutdownNow();
+      throw new IllegalStateException("Interrupted while inserting data to " + databaseName + "." + tableName, e);
+    }
+    return failures;
+  }
+
+  private void checkFailures(Map<Map<String, String>, Throwable> failures) {
+    if (failures.isEmpty()) {
+      return;
+    }
+    StringBuilder message = new StringBuilder("An error occurred while inserting data to ")
+        .append(databaseName).append('.').append(tableName).append(", failed partitions:");
+    RuntimeException failure = null;
+    for (Map.Entry<Map<String, String>, Throwable> partitionFailure : failures.entrySet()) {
+      message.append("\n  ").append(partitionFailure.getKey()).append(": ")
+          .append(partitionFailure.getValue().getMessage());
+    }
+    for (Throwable cause : failures.values()) {
+      if (failure == null) {
+        failure = new RuntimeException(message.toString(), cause);
+      } else {
+        failure.addSuppressed(cause);
+      }
+    }
+    throw failure;
+  }
+
+  private void write(Target target, Collection<HCatRecord> rows) throws Exception {
+    Serializer serializer = (Serializer) ReflectionUtils.newInstance(
+        conf.getClassByName(target.serializationLib), conf);
+    serializer.initialize(conf, target.metadata);
+
+    List<FieldSchema> columns = target.columns;
+    List<String> names = new ArrayList<>(columns.size());
+    List<ObjectInspector> inspectors = new ArrayList<>(columns.size());
+    for (FieldSchema column : columns) {
+      names.add(column.getName());
+      inspectors.add(TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo(
+          TypeInfoUtils.getTypeInfoFromTypeString(column.getType())));
+    }
+    StructObjectInspector rowInspector = ObjectInspectorFactory.getStandardStructObjectInspector(names, inspectors);
+
+    JobConf jobConf = new JobConf(conf);
+    HiveOutputFormat<?, ?> outputFormat = (HiveOutputFormat<?, ?>) ReflectionUtils.newInstance(
+        target.outputFormatClass, jobConf);
+    boolean compressed = conf.getBoolVar(HiveConf.ConfVars.COMPRESSRESULT);
+    Path file = new Path(target.location, "part-" + UUID.randomUUID()
+        + Utilities.getFileExtension(jobConf, compressed, outputFormat));
+    file.getFileSystem(jobConf).mkdirs(target.location);
+
+    RecordWriter writer = outputFormat.getHiveRecordWriter(jobConf, file, serializer.getSerializedClass(),
+        compressed, target.metadata, Reporter.NULL);
+    boolean written = false;
+    try {
+      // Records may hold the partition values after the table columns, those are left out
+      List<Object> row = new ArrayList<>(columns.size());
+      for (HCatRecord record : rows) {
+        row.clear();
+        for (int i = 0; i < columns.size(); i++) {
+          row.add(record.get(i));
+        }
+        writer.write(serializer.serialize(row, rowInspector));
+      }
+      written = true;
+    } finally {
+      closeWriter(writer, !written);
+    }
+  }
+
+  private static void closeWriter(RecordWriter writer, boolean abort) throws IOException {
+    if (abort) {
+      try {
+        writer.close(true);
+      } catch (IOException e) {
+        // Keep the failure that caused the abort
+      }
+    } else {
+      writer.close(false);
+    }
+  }
+
+  private static Map<String, String> orderedPartitionSpec(Table table, Map<String, String> partitionSpec) {
+    Map<String, String> ordered = new LinkedHashMap<>();
+    for (FieldSchema partitionColumn : table.getPartCols()) {
+      String value = partitionSpec.get(partitionColumn.getName());
+      if (value == null) {
+        throw new IllegalArgumentException("Value for partition column " + partitionColumn.getName()
+            + " must not be null.");
+      }
+      ordered.put(partitionColumn.getName(), value);
+    }
+    return ordered;
+  }
+
+  private Partition newPartition(Table table, Map<String, String> orderedSpec, Path location) {
+    StorageDescriptor sd = new StorageDescriptor(table.getTTable().getSd());
+    sd.setLocation(location.toString());
+    int now = (int) (System.currentTimeMillis() / 1000);
+    return new Partition(new ArrayList<>(orderedSpec.values()), databaseName, tableName, now, now, sd,
+        new HashMap<String, String>());
+  }
+
+  private interface PartitionTask {
+    void run(Map<String, String> partitionSpec) throws Exception;
+  }
+
+  /**
+   * Where and how the rows of one partition are written.
+   */
+  private static final class Target {
+
+    private final Path location;
+    private final String serializationLib;
+    private final Class<?> outputFormatClass;
+    private final Properties metadata;
+    private final List<FieldSchema> columns;
+
+    private Target(Path location, String serializationLib, Class<?> outputFormatClass, Properties metadata,
+        List<FieldSchema> columns) {
+      this.location = location;
+      this.serializationLib = serializationLib;
+      this.outputFormatClass = outputFormatClass;
+      this.metadata = metadata;
+      this.columns = columns;
+    }
+
+    /**
+     * The table itself or a new partition of it, which gets the storage descriptor of the table.
+     */
+    static Target of(Table table, Path location) {
+      return new Target(location, table.getSerializationLib(), table.getOutputFormatClass(), table.getMetadata(),
+          table.getCols());
+    }
+
+    /**
+     * An existing partition. Returns null if the partition can't be bulk loaded.
+     */
+    static Target of(Table table, Partition partition) throws HiveException {
+      org.apache.hadoop.hive.ql.metadata.Partition qlPartition =
+          new org.apache.hadoop.hive.ql.metadata.Partition(table, partition);
+      Class<?> outputFormatClass = qlPartition.getOutputFormatClass();
+      List<FieldSchema> columns = partition.getSd().getCols();
+      if (!HiveOutputFormat.class.isAssignableFrom(outputFormatClass) || !sameTypes(columns, table.getCols())) {
+        return null;
+      }
+      return new Target(qlPartition.getDataLocation(), partition.getSd().getSerdeInfo().getSerializationLib(),
+          outputFormatClass, MetaStoreUtils.getSchema(partition, table.getTTable()), columns);
+    }
+
+    private static boolean sameTypes(List<FieldSchema> columns, List<FieldSchema> otherColumns) {
+      if (columns.size() != otherColumns.size()) {
+        return false;
+      }
+      for (int i = 0; i < columns.size(); i++) {
+        if (!columns.get(i).getType().equalsIgnoreCase(otherColumns.get(i).getType())) {
+          return false;
+        }
+      }
+      return true;
+    }
   }
 
 }
@@ -1,31 +1,62 @@
 package com.klarna.hiverunner.data;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.hive.hcatalog.data.schema.HCatSchema;
 
-import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.klarna.hiverunner.CloseableIterator;
 
 /**
- * A {@link FileParser} for parsing data out of a TSV file.
+ * A {@link FileParser} for parsing data out of a TSV file. Gzip compressed files are recognized by their magic number
+ * and decompressed as they are read.
+ * <p/>
+ * With a parallelism above 1, uncompressed files in UTF-8 or a single byte charset are memory mapped and split at line
+ * boundaries into chunks that are parsed on a fork join pool. Rows are returned in file order unless
+ * {@link #withUnorderedRows()} allows them to be returned as chunks complete. Lines end with a line feed, a carriage
+ * return or both, like they do for {@link BufferedReader#readLine()}.
  */
-public class TsvFileParser implements FileParser {
+public class TsvFileParser implements StreamingFileParser {
 
   private static final String DEFAULT_DELIMITER = "\t";
   private static final String DEFAULT_NULL_VALUE = "";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+  static final long READ_AHEAD_BYTES = 16 * 1024 * 1024;
 
-  private Splitter splitter;
+  private String delimiter;
   private Object nullValue;
   private Charset charset;
   private boolean hasHeader;
+  private int parallelism = 1;
+  private boolean ordered = true;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
 
   public TsvFileParser() {
     withDelimiter(DEFAULT_DELIMITER);
@@ -38,7 +69,10 @@ public class TsvFileParser implements FileParser {
    * Use the provided delimiter. The default is a tab.
    */
   public TsvFileParser withDelimiter(String delimiter) {
-    splitter = Splitter.on(delimiter);
+    if (delimiter == null || delimiter.isEmpty()) {
+      throw new IllegalArgumentException("The delimiter may not be empty.");
+    }
+    this.delimiter = delimiter;
     return this;
   }
 
@@ -75,24 +109,68 @@ public class TsvFileParser implements FileParser {
     return this;
   }
 
+  /**
+   * Parse chunks of the file on up to the given number of threads. The default is 1, i.e. the file is read
+   * sequentially.
+   * <p/>
+   * Chunks of up to 16 MB of the file in total are parsed ahead of the rows returned, whatever the parallelism. The
+   * parsed rows of a chunk take several times its size on the heap.
+   */
+  public TsvFileParser withParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Allow rows parsed in parallel to be returned as their chunks complete rather than in file order.
+   */
+  public TsvFileParser withUnorderedRows() {
+    this.ordered = false;
+    return this;
+  }
+
+  /**
+   * Split files parsed in parallel into chunks of about the given number of bytes. The default is 1 MB. At least one
+   * chunk is parsed ahead, so larger chunks raise the memory used by the parser.
+   */
+  public TsvFileParser withChunkSize(int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    }
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
 
   @Override
   public List<Object[]> parse(File file, HCatSchema schema, List<String> names) {
-    try {
-      List<String> lines = Files.readAllLines(file.toPath(), charset);
-
-      if (this.hasHeader) {
-        lines = lines.subList(1, lines.size());
+    List<Object[]> records = new ArrayList<>();
+    try (CloseableIterator<Object[]> rows = iterate(file, schema, names)) {
+      while (rows.hasNext()) {
+        records.add(rows.next());
       }
+    }
+    return records;
+  }
 
-      List<Object[]> records = new ArrayList<>(lines.size());
-      for (String line : lines) {
-        records.add(parseRow(line, names.size()));
+  @Override
+  public CloseableIterator<Object[]> iterate(File file, HCatSchema schema, List<String> names) {
+    if (parallelism > 1 && isSplittable(file)) {
+      return new ChunkIterator(file, names.size());
+    }
+    BufferedReader reader = open(file);
+    try {
+      if (this.hasHeader) {
+        reader.readLine();
       }
-      return records;
     } catch (IOException e) {
+      closeQuietly(reader);
       throw new RuntimeException("Error while reading file", e);
     }
+    return new RowIterator(reader, names.size());
   }
 
   @Override
@@ -102,38 +180,347 @@ public class TsvFileParser implements FileParser {
 
   @Override
   public List<String> getColumnNames(File file) {
-    try {
-      String firstLine = Files.newBufferedReader(file.toPath(), charset).readLine();
+    try (BufferedReader reader = open(file)) {
+      String firstLine = reader.readLine();
       List<String> columns = new ArrayList<>();
-      Iterator<String> iterator = splitter.split(firstLine).iterator();
-
-      while (iterator.hasNext()) {
-        String column = iterator.next();
-        columns.add(column);
+      int start = 0;
+      int end;
+      while ((end = firstLine.indexOf(delimiter, start)) >= 0) {
+        columns.add(firstLine.substring(start, end));
+        start = end + delimiter.length();
       }
+      columns.add(firstLine.substring(start));
       return columns;
     } catch(IOException e) {
       throw new RuntimeException("Error while reading file", e);
     }
   }
 
-  private Object[] parseRow(String line, int size) {
-    List<Object> row = new ArrayList<>(size);
-    Iterator<String> iterator = splitter.split(line).iterator();
+  private BufferedReader open(File file) {
+    InputStream in = null;
+    try {
+      in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+      if (isGzip(in)) {
+        in = new GZIPInputStream(in, BUFFER_SIZE);
+      }
+      return new BufferedReader(new InputStreamReader(in, charset), BUFFER_SIZE);
+    } catch (IOException e) {
+      closeQuietly(in);
+      throw new RuntimeException("Error while reading file", e);
+    }
+  }
+
+  private boolean isSplittable(File file) {
+    // Newline bytes can only be line breaks in UTF-8 and single byte charsets
+    if (!charset.equals(StandardCharsets.UTF_8) && charset.newEncoder().maxBytesPerChar() != 1) {
+      return false;
+    }
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      return !isGzip(in);
+    } catch (IOException e) {
+      throw new RuntimeException("Error while reading file", e);
+    }
+  }
+
+  private static boolean isGzip(InputStream in) throws IOException {
+    in.mark(2);
+    int first = in.read();
+    int second = in.read();
+    in.reset();
+    return first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8);
+  }
+
+  private static void closeQuietly(AutoCloseable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (Exception e) {
+        // Keep the failure that caused the close
+      }
+    }
+  }
 
+  /**
+   * Splits a line into exactly size fields, ignoring any fields past those.
+   */
+  private Object[] parseRow(String line, int size) {
+    Object[] row = new Object[size];
+    int start = 0;
     for (int i = 0; i < size; i++) {
-      if (iterator.hasNext()) {
-        String column = iterator.next();
-        if (ObjectUtils.equals(nullValue, column)) {
-          row.add(null);
+      if (start > line.length()) {
+        throw new IllegalStateException("Not enough columns. Require " + size + " columns, got " + i);
+      }
+      int end = line.indexOf(delimiter, start);
+      if (end < 0) {
+        end = line.length();
+      }
+      String column = line.substring(start, end);
+      row[i] = ObjectUtils.equals(nullValue, column) ? null : column;
+      start = end + delimiter.length();
+    }
+    return row;
+  }
+
+  private final class RowIterator implements CloseableIterator<Object[]> {
+
+    private final BufferedReader reader;
+    private final int size;
+    private String line;
+    private boolean closed;
+
+    private RowIterator(BufferedReader reader, int size) {
+      this.reader = reader;
+      this.size = size;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (line == null && !closed) {
+        try {
+          line = reader.readLine();
+        } catch (IOException e) {
+          close();
+          throw new RuntimeException("Error while reading file", e);
+        }
+        if (line == null) {
+          close();
+        }
+      }
+      return line != null;
+    }
+
+    @Override
+    public Object[] next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      String current = line;
+      line = null;
+      return parseRow(current, size);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        closeQuietly(reader);
+      }
+    }
+  }
+
+  /**
+   * Parses a memory mapped file in chunks of about chunkSize bytes on a fork join pool. A line belongs to the chunk it
+   * starts in. At most two chunks per thread, and no more chunks than fit in READ_AHEAD_BYTES, are parsed ahead of the
+   * rows returned.
+   */
+  private final class ChunkIterator implements CloseableIterator<Object[]> {
+
+    private final File file;
+    private final int size;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final ForkJoinPool pool;
+    private final Deque<Future<List<Object[]>>> pending = new ArrayDeque<>();
+    private final CompletionService<List<Object[]>> completed;
+    private final long maxRunning;
+    private long nextChunk;
+    private int running;
+    private Iterator<Object[]> rows = Collections.emptyIterator();
+    private boolean closed;
+
+    private ChunkIterator(File file, int size) {
+      this.file = file;
+      this.size = size;
+      try {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+      } catch (IOException e) {
+        throw new RuntimeException("Error while reading file", e);
+      }
+      pool = new ForkJoinPool(parallelism);
+      maxRunning = Math.max(1, Math.min(2L * parallelism, READ_AHEAD_BYTES / chunkSize));
+      completed = ordered ? null : new ExecutorCompletionService<List<Object[]>>(pool);
+      submitChunks();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!rows.hasNext() && !closed) {
+        if (running == 0) {
+          close();
         } else {
-          row.add(column);
+          rows = nextChunk().iterator();
+          submitChunks();
         }
-      } else {
-        throw new IllegalStateException("Not enough columns. Require " + size + " columns, got " + i);
+      }
+      return rows.hasNext();
+    }
+
+    @Override
+    public Object[] next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return rows.next();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        for (Future<List<Object[]>> chunk : pending) {
+          chunk.cancel(false);
+        }
+        pending.clear();
+        pool.shutdownNow();
+        closeQuietly(channel);
       }
     }
 
-    return row.toArray(new Object[size]);
+    private void submitChunks() {
+      while (running < maxRunning && nextChunk < fileSize) {
+        final long start = nextChunk;
+        final long end = Math.min(fileSize, start + chunkSize);
+        nextChunk = end;
+        Callable<List<Object[]>> task = new Callable<List<Object[]>>() {
+          @Override
+          public List<Object[]> call() throws IOException {
+            return parseChunk(start, end);
+          }
+        };
+        if (ordered) {
+          pending.add(pool.submit(task));
+        } else {
+          completed.submit(task);
+        }
+        running++;
+      }
+    }
+
+    private List<Object[]> nextChunk() {
+      running--;
+      try {
+        return ordered ? pending.poll().get() : completed.take().get();
+      } catch (ExecutionException e) {
+        close();
+        Throwables.propagateIfPossible(e.getCause());
+        throw new RuntimeException("Error while parsing file " + file, e.getCause());
+      } catch (InterruptedException e) {
+        close();
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while parsing file " + file, e);
+      }
+    }
+
+    private List<Object[]> parseChunk(long start, long end) throws IOException {
+      // Map from the byte before the chunk to tell whether its first line starts in this chunk
+      MappedChunk chunk = new MappedChunk(start == 0 ? 0 : start - 1, end);
+      List<Object[]> chunkRows = new ArrayList<>();
+      int position = 0;
+      if (start > 0) {
+        int lineBreak = chunk.indexOfLineBreak(0);
+        if (lineBreak < 0) {
+          return chunkRows;
+        }
+        position = chunk.skipLineBreak(lineBreak);
+      }
+      boolean skipLine = start == 0 && hasHeader;
+
+      byte[] line = new byte[256];
+      while (position < chunk.limit && position < chunk.buffer.limit()) {
+        int lineEnd = chunk.indexOfLineBreak(position);
+        int length = (lineEnd < 0 ? chunk.buffer.limit() : lineEnd) - position;
+        if (skipLine) {
+          skipLine = false;
+        } else {
+          if (line.length < length) {
+            line = new byte[Math.max(length, 2 * line.length)];
+          }
+          chunk.buffer.position(position);
+          chunk.buffer.get(line, 0, length);
+          chunkRows.add(parseRow(new String(line, 0, length, charset), size));
+        }
+        position = lineEnd < 0 ? chunk.buffer.limit() : chunk.skipLineBreak(lineEnd);
+      }
+      return chunkRows;
+    }
+
+    /**
+     * A mapped region of the file starting at mapStart, covering the chunk and the line running past its end. The
+     * region is extended while a line runs past it.
+     */
+    private final class MappedChunk {
+
+      private final long mapStart;
+      private final int limit;
+      private ByteBuffer buffer;
+
+      private MappedChunk(long mapStart, long end) throws IOException {
+        this.mapStart = mapStart;
+        this.limit = (int) (end - mapStart);
+        map(limit + (long) BUFFER_SIZE);
+      }
+
+      private int indexOfLineBreak(int from) throws IOException {
+        int lineBreak = TsvFileParser.indexOfLineBreak(buffer, from);
+        while (lineBreak < 0) {
+          int searched = buffer.limit();
+          if (!extend()) {
+            break;
+          }
+          lineBreak = TsvFileParser.indexOfLineBreak(buffer, searched);
+        }
+        return lineBreak;
+      }
+
+      /**
+       * @return The position after the line break at the given position, taking a carriage return followed by a line
+       *         feed as one line break.
+       */
+      private int skipLineBreak(int lineBreak) throws IOException {
+        if (buffer.get(lineBreak) == '\r') {
+          if (lineBreak + 1 == buffer.limit()) {
+            extend();
+          }
+          if (lineBreak + 1 < buffer.limit() && buffer.get(lineBreak + 1) == '\n') {
+            return lineBreak + 2;
+          }
+        }
+        return lineBreak + 1;
+      }
+
+      private boolean extend() throws IOException {
+        if (mapStart + buffer.limit() >= fileSize || buffer.limit() == Integer.MAX_VALUE) {
+          return false;
+        }
+        map(2L * buffer.limit());
+        return true;
+      }
+
+      private void map(long length) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+            Math.min(Math.min(length, fileSize - mapStart), Integer.MAX_VALUE));
+      }
+    }
+  }
+
+  private static int indexOfLineBreak(ByteBuffer buffer, int from) {
+    for (int i = from; i < buffer.limit(); i++) {
+      byte b = buffer.get(i);
+      if (b == '\n' || b == '\r') {
+        return i;
+      }
+    }
+    return -1;
   }
 }
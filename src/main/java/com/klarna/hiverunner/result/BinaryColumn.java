@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.result;
+
+import org.apache.hive.service.cli.ColumnDescriptor;
+import org.apache.hive.service.cli.thrift.TColumn;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column of binary values.
+ */
+public final class BinaryColumn extends ResultColumn {
+
+    private byte[][] values = new byte[0][];
+
+    BinaryColumn(ColumnDescriptor descriptor) {
+        super(descriptor);
+    }
+
+    /**
+     * Get the value of a row, or null. The array is backed by this column and must not be modified.
+     */
+    public byte[] getBytes(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    @Override
+    public Object get(int row) {
+        return getBytes(row);
+    }
+
+    @Override
+    void append(TColumn column) {
+        if (!column.isSetBinaryVal()) {
+            throw unexpectedColumn(column);
+        }
+        List<ByteBuffer> page = column.getBinaryVal().getValues();
+        if (values.length < size + page.size()) {
+            values = Arrays.copyOf(values, grow(values.length, size + page.size()));
+        }
+        appendNulls(column.getBinaryVal().getNulls(), page.size());
+        for (ByteBuffer value : page) {
+            if (nullAt(size) || value == null) {
+                values[size] = null;
+            } else {
+                byte[] bytes = new byte[value.remaining()];
+                value.duplicate().get(bytes);
+                values[size] = bytes;
+            }
+            size++;
+        }
+    }
+
+    @Override
+    void trim() {
+        values = Arrays.copyOf(values, size);
+    }
+}
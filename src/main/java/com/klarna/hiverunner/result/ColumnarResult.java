@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.result;
+
+import org.apache.hive.service.cli.TableSchema;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query result held column by column in primitive arrays, see {@link LongColumn}, {@link DoubleColumn},
+ * {@link BooleanColumn}, {@link StringColumn} and {@link BinaryColumn}. Built straight from the pages fetched from
+ * the HiveServer without materializing rows.
+ */
+public final class ColumnarResult {
+
+    private final TableSchema schema;
+    private final List<ResultColumn> columns;
+    private final int rowCount;
+
+    ColumnarResult(TableSchema schema, List<ResultColumn> columns, int rowCount) {
+        this.schema = schema;
+        this.columns = Collections.unmodifiableList(columns);
+        this.rowCount = rowCount;
+    }
+
+    public TableSchema getSchema() {
+        return schema;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public List<ResultColumn> getColumns() {
+        return columns;
+    }
+
+    public ResultColumn getColumn(int index) {
+        return columns.get(index);
+    }
+
+    /**
+     * Get a column by its case insensitive name.
+     */
+    public ResultColumn getColumn(String name) {
+        for (ResultColumn column : columns) {
+            if (column.getName().equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("No column named " + name + " in " + getColumnNames());
+    }
+
+    /**
+     * Get a column by its case insensitive name and column type, e.g. {@code getColumn("id", LongColumn.class)}.
+     */
+    public <T extends ResultColumn> T getColumn(String name, Class<T> columnType) {
+        ResultColumn column = getColumn(name);
+        if (!columnType.isInstance(column)) {
+            throw new IllegalArgumentException("Column " + name + " of type " + column.getType() + " is a "
+                    + column.getClass().getSimpleName() + ", not a " + columnType.getSimpleName());
+        }
+        return columnType.cast(column);
+    }
+
+    /**
+     * Get a row with boxed values. Meant for failure messages and the odd lookup, iterate the columns for bulk access.
+     */
+    public Object[] getRow(int row) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns.get(i).get(row);
+        }
+        return values;
+    }
+
+    private String getColumnNames() {
+        StringBuilder names = new StringBuilder("[");
+        for (ResultColumn column : columns) {
+            names.append(names.length() > 1 ? ", " : "").append(column.getName());
+        }
+        return names.append("]").toString();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.result;
+
+import com.google.common.base.Preconditions;
+import org.apache.hive.service.cli.ColumnDescriptor;
+import org.apache.hive.service.cli.RowSet;
+import org.apache.hive.service.cli.TableSchema;
+import org.apache.hive.service.cli.thrift.TColumn;
+import org.apache.hive.service.cli.thrift.TRowSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a {@link ColumnarResult} from the pages of a result as fetched from the HiveServer. The pages must be column
+ * based, which is what the HiveServer returns to sessions of protocol version 6 and later.
+ */
+public final class ColumnarResultBuilder {
+
+    private final TableSchema schema;
+    private final List<ResultColumn> columns = new ArrayList<>();
+    private int rowCount;
+    private boolean built;
+
+    public ColumnarResultBuilder(TableSchema schema) {
+        this.schema = schema;
+        for (ColumnDescriptor descriptor : schema.getColumnDescriptors()) {
+            columns.add(ResultColumn.forDescriptor(descriptor));
+        }
+    }
+
+    /**
+     * Append a page of the result.
+     */
+    public void append(RowSet page) {
+        Preconditions.checkState(!built, "Result was already built");
+        TRowSet tRowSet = page.toTRowSet();
+        Preconditions.checkArgument(tRowSet.isSetColumns() || page.numRows() == 0,
+                "Columnar results require column based pages");
+        if (page.numRows() == 0) {
+            return;
+        }
+
+        List<TColumn> pageColumns = tRowSet.getColumns();
+        Preconditions.checkArgument(pageColumns.size() == columns.size(),
+                "Page has %s columns, schema has %s", pageColumns.size(), columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            columns.get(i).append(pageColumns.get(i));
+        }
+        rowCount += page.numRows();
+    }
+
+    public ColumnarResult build() {
+        Preconditions.checkState(!built, "Result was already built");
+        built = true;
+        for (ResultColumn column : columns) {
+            column.trim();
+        }
+        return new ColumnarResult(schema, columns, rowCount);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.result;
+
+import org.apache.hive.service.cli.ColumnDescriptor;
+import org.apache.hive.service.cli.thrift.TColumn;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column of tinyint, smallint, int or bigint values.
+ */
+public final class LongColumn extends ResultColumn {
+
+    private long[] values = new long[0];
+
+    LongColumn(ColumnDescriptor descriptor) {
+        super(descriptor);
+    }
+
+    /**
+     * Get the value of a row. Null rows are 0, see {@link #isNull(int)}.
+     */
+    public long getLong(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    /**
+     * Get the values of all rows. The array is backed by this column and must not be modified. Null rows are 0.
+     */
+    public long[] getValues() {
+        return values;
+    }
+
+    @Override
+    public Object get(int row) {
+        return isNull(row) ? null : values[row];
+    }
+
+    @Override
+    void append(TColumn column) {
+        if (column.isSetI64Val()) {
+            append(column.getI64Val().getValues(), column.getI64Val().getNulls());
+        } else if (column.isSetI32Val()) {
+            append(column.getI32Val().getValues(), column.getI32Val().getNulls());
+        } else if (column.isSetI16Val()) {
+            append(column.getI16Val().getValues(), column.getI16Val().getNulls());
+        } else if (column.isSetByteVal()) {
+            append(column.getByteVal().getValues(), column.getByteVal().getNulls());
+        } else {
+            throw unexpectedColumn(column);
+        }
+    }
+
+    private void append(List<? extends Number> page, byte[] pageNulls) {
+        if (values.length < size + page.size()) {
+            values = Arrays.copyOf(values, grow(values.length, size + page.size()));
+        }
+        appendNulls(pageNulls, page.size());
+        for (Number value : page) {
+            values[size++] = value == null ? 0 : value.longValue();
+        }
+    }
+
+    @Override
+    void trim() {
+        values = Arrays.copyOf(values, size);
+    }
+}
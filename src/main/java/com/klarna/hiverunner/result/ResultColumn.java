@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.result;
+
+import org.apache.hive.service.cli.ColumnDescriptor;
+import org.apache.hive.service.cli.Type;
+import org.apache.hive.service.cli.thrift.TColumn;
+
+import java.util.BitSet;
+
+/**
+ * A column of a {@link ColumnarResult}. Values are held in primitive arrays by the typed subclasses, nulls in a bitmap.
+ */
+public abstract class ResultColumn {
+
+    private final ColumnDescriptor descriptor;
+    private final BitSet nulls = new BitSet();
+    int size;
+
+    ResultColumn(ColumnDescriptor descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    static ResultColumn forDescriptor(ColumnDescriptor descriptor) {
+        switch (descriptor.getType()) {
+            case BOOLEAN_TYPE:
+                return new BooleanColumn(descriptor);
+            case TINYINT_TYPE:
+            case SMALLINT_TYPE:
+            case INT_TYPE:
+            case BIGINT_TYPE:
+                return new LongColumn(descriptor);
+            case FLOAT_TYPE:
+            case DOUBLE_TYPE:
+                return new DoubleColumn(descriptor);
+            case BINARY_TYPE:
+                return new BinaryColumn(descriptor);
+            default:
+                // Strings and everything that hive serializes as strings, e.g. decimals, dates and complex types
+                return new StringColumn(descriptor);
+        }
+    }
+
+    public String getName() {
+        return descriptor.getName();
+    }
+
+    public Type getType() {
+        return descriptor.getType();
+    }
+
+    /**
+     * Number of rows in this column.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        checkRow(row);
+        return nulls.get(row);
+    }
+
+    /**
+     * Get a copy of the null bitmap, where bit n is set if row n is null.
+     */
+    public BitSet getNulls() {
+        return (BitSet) nulls.clone();
+    }
+
+    /**
+     * Get the value of a row boxed, or null.
+     */
+    public abstract Object get(int row);
+
+    /**
+     * Append a page of the thrift representation of this column.
+     */
+    abstract void append(TColumn column);
+
+    /**
+     * Shrink the value arrays to the number of rows.
+     */
+    abstract void trim();
+
+    /**
+     * Record the nulls of a page of the given number of rows, appended after the current rows. The thrift bitmap has
+     * bit n of byte n / 8 set if row n is null.
+     */
+    final void appendNulls(byte[] pageNulls, int rows) {
+        if (pageNulls != null) {
+            for (int i = 0; i < rows && i / 8 < pageNulls.length; i++) {
+                if ((pageNulls[i / 8] & (1 << (i % 8))) != 0) {
+                    nulls.set(size + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Null check without bounds check, for rows being appended.
+     */
+    final boolean nullAt(int row) {
+        return nulls.get(row);
+    }
+
+    final void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of column " + getName() + " with " + size + " rows");
+        }
+    }
+
+    final IllegalStateException unexpectedColumn(TColumn column) {
+        return new IllegalStateException("Unexpected " + column.getSetField() + " values for " + getType()
+                + " column " + getName());
+    }
+
+    static int grow(int capacity, int required) {
+        return Math.max(required, Math.max(16, capacity * 2));
+    }
+}
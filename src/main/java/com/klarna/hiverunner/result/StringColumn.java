@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.result;
+
+import org.apache.hive.service.cli.ColumnDescriptor;
+import org.apache.hive.service.cli.thrift.TColumn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoded column of string values. Each distinct value is held once in the dictionary and rows refer to it
+ * by code. Also used for the types that hive serializes as strings, e.g. decimal, date, timestamp and complex types.
+ */
+public final class StringColumn extends ResultColumn {
+
+    /**
+     * Code of null rows.
+     */
+    public static final int NULL_CODE = -1;
+
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> codesByValue = new HashMap<>();
+    private int[] codes = new int[0];
+
+    StringColumn(ColumnDescriptor descriptor) {
+        super(descriptor);
+    }
+
+    public String getString(int row) {
+        checkRow(row);
+        return codes[row] == NULL_CODE ? null : dictionary.get(codes[row]);
+    }
+
+    /**
+     * Get the dictionary code of a row, or {@link #NULL_CODE}.
+     */
+    public int getCode(int row) {
+        checkRow(row);
+        return codes[row];
+    }
+
+    /**
+     * Get the dictionary codes of all rows. The array is backed by this column and must not be modified.
+     */
+    public int[] getCodes() {
+        return codes;
+    }
+
+    /**
+     * Get the distinct values of this column, indexed by code.
+     */
+    public List<String> getDictionary() {
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    @Override
+    public Object get(int row) {
+        return getString(row);
+    }
+
+    @Override
+    void append(TColumn column) {
+        if (!column.isSetStringVal()) {
+            throw unexpectedColumn(column);
+        }
+        List<String> page = column.getStringVal().getValues();
+        if (codes.length < size + page.size()) {
+            codes = Arrays.copyOf(codes, grow(codes.length, size + page.size()));
+        }
+        appendNulls(column.getStringVal().getNulls(), page.size());
+        for (String value : page) {
+            codes[size] = nullAt(size) || value == null ? NULL_CODE : encode(value);
+            size++;
+        }
+    }
+
+    private int encode(String value) {
+        Integer code = codesByValue.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            codesByValue.put(value, code);
+        }
+        return code;
+    }
+
+    @Override
+    void trim() {
+        codes = Arrays.copyOf(codes, size);
+        codesByValue.clear();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.sql;
+
+/**
+ * Works out the tables a statement reads and writes.
+ */
+public interface StatementAnalyzer {
+
+    /**
+     * Analyzes statements by parsing them every time.
+     */
+    StatementAnalyzer PARSER = new StatementAnalyzer() {
+        @Override
+        public TableAccess analyze(String statement, String database) {
+            return StatementDependencies.analyze(statement, database);
+        }
+    };
+
+    /**
+     * @param statement Statement with variables already substituted.
+     * @param database The database unqualified table names refer to.
+     */
+    TableAccess analyze(String statement, String database);
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.sql;
+
+import org.apache.hadoop.hive.ql.parse.ASTNode;
+import org.apache.hadoop.hive.ql.parse.HiveParser;
+import org.apache.hadoop.hive.ql.parse.ParseDriver;
+import org.apache.hadoop.hive.ql.parse.ParseException;
+import org.apache.hadoop.hive.ql.parse.ParseUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out which statements of a script must wait for which earlier statements, so that the independent ones may be
+ * executed concurrently.
+ * <p/>
+ * Each statement is parsed with the Hive parser into the tables it reads and the tables it writes. A statement depends
+ * on an earlier statement if one of them writes a table the other reads or writes. Statements that could affect more
+ * than the tables they name, e.g. 'use', 'set', 'create database', 'create function', 'alter table' or statements
+ * that can't be parsed, are barriers: they wait for all earlier statements and all later statements wait for them.
+ * <p/>
+ * Reading a view created earlier in the same script counts as reading the tables of the view. Views created outside
+ * the script are not known and are treated as plain tables.
+ */
+public final class StatementDependencies {
+
+    private static final Set<Integer> TABLE_STATEMENTS = new HashSet<>(Arrays.asList(
+            HiveParser.TOK_QUERY,
+            HiveParser.TOK_CREATETABLE,
+            HiveParser.TOK_DROPTABLE,
+            HiveParser.TOK_CREATEVIEW,
+            HiveParser.TOK_DROPVIEW,
+            HiveParser.TOK_LOAD,
+            HiveParser.TOK_TRUNCATETABLE,
+            // Statements reading metadata only. Tables they name count as written, which keeps e.g. 'describe' after
+            // the 'create table' it describes.
+            HiveParser.TOK_SHOWTABLES,
+            HiveParser.TOK_SHOWDATABASES,
+            HiveParser.TOK_SHOWPARTITIONS,
+            HiveParser.TOK_SHOWCOLUMNS,
+            HiveParser.TOK_SHOWFUNCTIONS,
+            HiveParser.TOK_SHOW_CREATETABLE,
+            HiveParser.TOK_DESCTABLE,
+            HiveParser.TOK_DESCDATABASE,
+            HiveParser.TOK_EXPLAIN));
+
+    private StatementDependencies() {
+    }
+
+    /**
+     * Get the dependencies of each statement as the indexes of the earlier statements it must wait for.
+     *
+     * @param statements Statements with variables already substituted.
+     * @param currentDatabase The database unqualified table names refer to at the start of the script.
+     */
+    public static List<Set<Integer>> dependencies(List<String> statements, String currentDatabase) {
+        return dependencies(statements, currentDatabase, StatementAnalyzer.PARSER);
+    }
+
+    /**
+     * Get the dependencies of each statement as the indexes of the earlier statements it must wait for.
+     *
+     * @param statements Statements with variables already substituted.
+     * @param currentDatabase The database unqualified table names refer to at the start of the script.
+     * @param analyzer Works out the tables of each statement.
+     */
+    public static List<Set<Integer>> dependencies(List<String> statements, String currentDatabase,
+                                                  StatementAnalyzer analyzer) {
+        List<TableAccess> accesses = new ArrayList<>();
+        Map<String, Set<String>> views = new HashMap<>();
+        String database = currentDatabase.toLowerCase();
+        for (String statement : statements) {
+            TableAccess access = analyzer.analyze(statement, database).expandViews(views);
+            if (access.getDatabase() != null) {
+                database = access.getDatabase();
+            }
+            if (access.isViewDefinition()) {
+                for (String view : access.getWrites()) {
+                    views.put(view, access.getReads());
+                }
+            }
+            accesses.add(access);
+        }
+
+        List<Set<Integer>> dependencies = new ArrayList<>();
+        int lastBarrier = -1;
+        for (int i = 0; i < accesses.size(); i++) {
+            Set<Integer> statementDependencies = new LinkedHashSet<>();
+            TableAccess access = accesses.get(i);
+            for (int j = Math.max(lastBarrier, 0); j < i; j++) {
+                if (j == lastBarrier || access.conflictsWith(accesses.get(j))) {
+                    statementDependencies.add(j);
+                }
+            }
+            if (access.isBarrier()) {
+                lastBarrier = i;
+            }
+            dependencies.add(statementDependencies);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Parse a statement into the tables it reads and writes.
+     *
+     * @param statement Statement with variables already substituted.
+     * @param database The database unqualified table names refer to.
+     */
+    public static TableAccess analyze(String statement, String database) {
+        ASTNode tree;
+        try {
+            tree = ParseUtils.findRootNonNullToken(new ParseDriver().parse(statement));
+        } catch (ParseException | RuntimeException e) {
+            // E.g. 'set' and 'add jar' are handled outside of the parser
+            return TableAccess.barrier(null);
+        }
+
+        if (tree.getType() == HiveParser.TOK_SWITCHDATABASE) {
+            return TableAccess.barrier(tree.getChild(0).getText().toLowerCase());
+        }
+        if (!TABLE_STATEMENTS.contains(tree.getType())) {
+            return TableAccess.barrier(null);
+        }
+
+        Set<String> reads = new HashSet<>();
+        Set<String> writes = new HashSet<>();
+        Set<String> functions = new HashSet<>();
+        if (!collect(tree, database.toLowerCase(), reads, writes, functions)) {
+            return TableAccess.barrier(null);
+        }
+        return new TableAccess(reads, writes, functions, tree.getType() == HiveParser.TOK_QUERY,
+                tree.getType() == HiveParser.TOK_CREATEVIEW);
+    }
+
+    /**
+     * Collect the tables read and written and the functions called below the given node.
+     *
+     * @return false if the statement touches something other than tables, e.g. a directory.
+     */
+    private static boolean collect(ASTNode node, String database, Set<String> reads, Set<String> writes,
+                                   Set<String> functions) {
+        switch (node.getType()) {
+            case HiveParser.TOK_DIR:
+            case HiveParser.TOK_LOCAL_DIR:
+                if (node.getChildCount() == 0 || node.getChild(0).getType() != HiveParser.TOK_TMP_FILE) {
+                    return false;
+                }
+                break;
+            case HiveParser.TOK_TABNAME:
+                String table = tableName(node, database);
+                switch (((ASTNode) node.getParent()).getType()) {
+                    case HiveParser.TOK_TABREF:
+                    case HiveParser.TOK_LIKETABLE:
+                        reads.add(table);
+                        break;
+                    case HiveParser.TOK_ALLCOLREF:
+                        // An alias in 'select t.*'
+                        break;
+                    default:
+                        // Targets of inserts, loads, creates, drops and truncates
+                        writes.add(table);
+                }
+                return true;
+            case HiveParser.TOK_FUNCTION:
+            case HiveParser.TOK_FUNCTIONDI:
+            case HiveParser.TOK_FUNCTIONSTAR:
+                // Casts and keyword functions like 'case' and 'in' are not called by identifier
+                if (node.getChildCount() > 0 && node.getChild(0).getType() == HiveParser.Identifier) {
+                    functions.add(node.getChild(0).getText().toLowerCase());
+                }
+                break;
+            default:
+        }
+
+        for (int i = 0; i < node.getChildCount(); i++) {
+            if (!collect((ASTNode) node.getChild(i), database, reads, writes, functions)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String tableName(ASTNode tabName, String database) {
+        if (tabName.getChildCount() == 2) {
+            return (tabName.getChild(0).getText() + "." + tabName.getChild(1).getText()).toLowerCase();
+        }
+        return (database + "." + tabName.getChild(0).getText()).toLowerCase();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.sql;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The tables a statement reads and writes, by fully qualified, lower case name. Statements that could affect more
+ * than the tables they name are barriers, see {@link StatementDependencies}.
+ */
+public final class TableAccess {
+
+    private final Set<String> reads;
+    private final Set<String> writes;
+    private final Set<String> functions;
+    private final boolean barrier;
+    private final boolean query;
+    private final boolean viewDefinition;
+    private final String database;
+
+    TableAccess(Set<String> reads, Set<String> writes, Set<String> functions, boolean query,
+                boolean viewDefinition) {
+        this(reads, writes, functions, false, query, viewDefinition, null);
+    }
+
+    private TableAccess(Set<String> reads, Set<String> writes, Set<String> functions, boolean barrier, boolean query,
+                        boolean viewDefinition, String database) {
+        this.reads = Collections.unmodifiableSet(reads);
+        this.writes = Collections.unmodifiableSet(writes);
+        this.functions = Collections.unmodifiableSet(functions);
+        this.barrier = barrier;
+        this.query = query;
+        this.viewDefinition = viewDefinition;
+        this.database = database;
+    }
+
+    /**
+     * @param database The database the statement switches to, or null if it does not switch database.
+     */
+    static TableAccess barrier(String database) {
+        return new TableAccess(Collections.<String>emptySet(), Collections.<String>emptySet(),
+                Collections.<String>emptySet(), true, false, false, database);
+    }
+
+    public Set<String> getReads() {
+        return reads;
+    }
+
+    public Set<String> getWrites() {
+        return writes;
+    }
+
+    /**
+     * Get the lower case names of the functions the statement calls, other than operators and casts.
+     */
+    public Set<String> getFunctions() {
+        return functions;
+    }
+
+    public boolean isBarrier() {
+        return barrier;
+    }
+
+    /**
+     * True for queries, i.e. selects and inserts.
+     */
+    public boolean isQuery() {
+        return query;
+    }
+
+    /**
+     * True for 'create view', in which case the reads are the tables of the view.
+     */
+    public boolean isViewDefinition() {
+        return viewDefinition;
+    }
+
+    /**
+     * Get the database the statement switches to, or null if it does not switch database.
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * Add the tables of the given views to the reads of this statement.
+     *
+     * @param views Tables by view name.
+     */
+    public TableAccess expandViews(Map<String, Set<String>> views) {
+        Set<String> expanded = new HashSet<>(reads);
+        for (String read : reads) {
+            if (views.containsKey(read)) {
+                expanded.addAll(views.get(read));
+            }
+        }
+        return expanded.size() == reads.size() ? this
+                : new TableAccess(expanded, writes, functions, barrier, query, viewDefinition,
+                database);
+    }
+
+    /**
+     * True if this statement must not run concurrently with the given earlier statement.
+     */
+    public boolean conflictsWith(TableAccess earlier) {
+        return barrier
+                || earlier.barrier
+                || !Collections.disjoint(earlier.writes, writes)
+                || !Collections.disjoint(earlier.writes, reads)
+                || !Collections.disjoint(earlier.reads, writes);
+    }
+}
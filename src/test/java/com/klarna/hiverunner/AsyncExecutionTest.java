@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveSQL;
+import org.apache.hive.service.cli.HiveSQLException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+@RunWith(StandaloneHiveRunner.class)
+public class AsyncExecutionTest {
+
+    @HiveSQL(files = {})
+    private HiveShell hiveShell;
+
+    @Before
+    public void setup() {
+        hiveShell.execute("create table source (id int, name string)");
+        hiveShell.insertInto("default", "source")
+                .addRow(1, "a")
+                .addRow(2, "b")
+                .addRow(3, "c")
+                .commit();
+    }
+
+    @Test
+    public void independentStatementsShouldRunConcurrently() throws Exception {
+        OverlapUdf.reset();
+        hiveShell.execute("create temporary function overlap as 'com.klarna.hiverunner.OverlapUdf'");
+
+        // Each statement blocks in the udf until another statement called it too, so they only all see an overlap if
+        // they run at the same time
+        List<Future<List<Object[]>>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(hiveShell.executeAsync("create table target_" + i
+                    + " as select id, name, overlap(" + i + ") as overlapped from source where id > " + i));
+        }
+        for (Future<List<Object[]>> future : futures) {
+            future.get();
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(3 - i, hiveShell.executeQuery("select * from target_" + i).size());
+            Assert.assertEquals(Collections.emptyList(),
+                    hiveShell.executeQuery("select id from target_" + i + " where not overlapped"));
+        }
+    }
+
+    @Test
+    public void futureShouldReturnResult() throws Exception {
+        List<Object[]> result = hiveShell.executeAsync("select count(*) from source").get();
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(3L, result.get(0)[0]);
+    }
+
+    @Test
+    public void runtimeFailureShouldFailFuture() throws Exception {
+        Future<List<Object[]>> future = hiveShell.executeAsync("select assert_true(count(*) < 3) from source");
+        try {
+            future.get();
+            Assert.fail("Expected the statement to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof HiveSQLException);
+        }
+    }
+}
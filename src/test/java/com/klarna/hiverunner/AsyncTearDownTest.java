@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveRunnerSetup;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Verifies that test methods are isolated when the HiveServers are torn down in the background.
+ */
+@RunWith(StandaloneHiveRunner.class)
+public class AsyncTearDownTest {
+
+    @HiveRunnerSetup
+    public final static HiveRunnerConfig CONFIG = new HiveRunnerConfig() {{
+        setAsyncTearDownEnabled(true);
+        setAsyncTearDownLimit(1);
+    }};
+
+    @HiveSQL(files = {})
+    private HiveShell hiveShell;
+
+    @Test
+    public void firstTestMethod() {
+        verifyIsolationAndLeaveResidue();
+    }
+
+    @Test
+    public void secondTestMethod() {
+        verifyIsolationAndLeaveResidue();
+    }
+
+    @Test
+    public void thirdTestMethod() {
+        verifyIsolationAndLeaveResidue();
+    }
+
+    private void verifyIsolationAndLeaveResidue() {
+        Assert.assertTrue(hiveShell.getBaseDir().getRoot().isDirectory());
+        Assert.assertEquals(Arrays.asList("default"), hiveShell.executeQuery("show databases"));
+        Assert.assertEquals(Arrays.<String>asList(), hiveShell.executeQuery("show tables"));
+
+        hiveShell.execute("create database foo");
+        hiveShell.execute("create table default.qux (s string)");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BackgroundTearDownTest {
+
+    @Test
+    public void drainShouldWaitForAllTearDowns() {
+        BackgroundTearDown tearDown = new BackgroundTearDown("test", 2);
+        final AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            tearDown.submit("tear down " + i, new Runnable() {
+                @Override
+                public void run() {
+                    sleep(20);
+                    done.incrementAndGet();
+                }
+            });
+        }
+
+        Assert.assertEquals(0, tearDown.drain());
+        Assert.assertEquals(5, done.get());
+    }
+
+    @Test
+    public void submitShouldBlockWhileLimitIsReached() throws InterruptedException {
+        final BackgroundTearDown tearDown = new BackgroundTearDown("test", 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        tearDown.submit("blocking", new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        });
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tearDown.submit("queued", new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+                submitted.countDown();
+            }
+        });
+        submitter.start();
+
+        Assert.assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        Assert.assertTrue(submitted.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, tearDown.drain());
+    }
+
+    @Test
+    public void failuresShouldBeCounted() {
+        BackgroundTearDown tearDown = new BackgroundTearDown("test", 2);
+        tearDown.submit("failing", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Expected");
+            }
+        });
+        tearDown.submit("succeeding", new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        Assert.assertEquals(1, tearDown.drain());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
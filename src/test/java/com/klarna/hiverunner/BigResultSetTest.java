@@ -57,4 +57,44 @@ public class BigResultSetTest {
         Assert.assertEquals(rows, hiveShell.executeQuery("select * from FOO"));
 
     }
+
+    /**
+     * Verifies that big result sets can be iterated without fetching all rows up front.
+     */
+    @Test
+    public void bigResultSetIteratorTest() throws IOException {
+        hiveShell.setHiveConfValue("location", "${hiveconf:hadoop.tmp.dir}/foo");
+        hiveShell.addSetupScript("CREATE table FOO (s String) LOCATION '${hiveconf:location}'");
+        OutputStream ros = hiveShell.getResourceOutputStream("${hiveconf:location}/foo.data");
+
+        List<String> rows = new ArrayList<>();
+
+        for (int i = 0; i < 1099; i++) {
+            String row = UUID.randomUUID().toString();
+            rows.add(row);
+            ros.write((row + "\n").getBytes());
+        }
+
+        hiveShell.start();
+
+        List<String> actual = new ArrayList<>();
+        try (CloseableIterator<String> iterator = hiveShell.executeQueryIterator("select * from FOO")) {
+            while (iterator.hasNext()) {
+                actual.add(iterator.next());
+            }
+        }
+        Assert.assertEquals(rows, actual);
+    }
+
+    @Test
+    public void closedIteratorShouldStopIterating() throws IOException {
+        hiveShell.start();
+        hiveShell.execute("CREATE table FOO (s String)");
+
+        CloseableIterator<Object[]> iterator = hiveShell.executeStatementStream("show tables");
+        Assert.assertTrue(iterator.hasNext());
+        iterator.close();
+        Assert.assertFalse(iterator.hasNext());
+        iterator.close();
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveRunnerSetup;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Verifies that a HiveServer shared by all test methods in a class is reset between the test methods.
+ * Both test methods leave the same residue behind so that each of them verifies the reset regardless of the order
+ * they are executed in.
+ */
+@RunWith(StandaloneHiveRunner.class)
+public class ClassScopedHiveServerTest {
+
+    @HiveRunnerSetup
+    public final static HiveRunnerConfig CONFIG = new HiveRunnerConfig() {{
+        setHiveServerScope(HiveServerScope.CLASS);
+    }};
+
+    private static final Set<File> BASE_DIRS = new HashSet<>();
+
+    @HiveSQL(files = {}, autoStart = false)
+    private HiveShell hiveShell;
+
+    @AfterClass
+    public static void hiveServerShouldBeSharedByAllTestMethods() {
+        Assert.assertEquals(1, BASE_DIRS.size());
+    }
+
+    @Test
+    public void firstTestMethod() {
+        verifyResetAndLeaveResidue("first");
+    }
+
+    @Test
+    public void secondTestMethod() {
+        verifyResetAndLeaveResidue("second");
+    }
+
+    private void verifyResetAndLeaveResidue(String value) {
+        hiveShell.setHiveConfValue("foo", value);
+        hiveShell.setHiveVarValue("bar", value);
+        hiveShell.addResource("${hiveconf:hadoop.tmp.dir}/baz/data.csv", "a\nb\n");
+        hiveShell.start();
+
+        BASE_DIRS.add(hiveShell.getBaseDir().getRoot());
+
+        Assert.assertEquals(Arrays.asList("default"), hiveShell.executeQuery("show databases"));
+        Assert.assertEquals(Collections.<String>emptyList(), hiveShell.executeQuery("show tables"));
+        Assert.assertEquals(value + " " + value + " ${hiveconf:other}",
+                hiveShell.expandVariableSubstitutes("${hiveconf:foo} ${hivevar:bar} ${hiveconf:other}"));
+
+        hiveShell.execute("create database foo");
+        hiveShell.execute("create table default.baz (s string) location '${hiveconf:hadoop.tmp.dir}/baz'");
+        hiveShell.execute("create table default.qux (s string)");
+        hiveShell.execute("insert into table default.qux select s from default.baz");
+        hiveShell.execute("use foo");
+        hiveShell.execute("set other=" + value);
+
+        Assert.assertEquals(Arrays.asList("a", "b"), hiveShell.executeQuery("select * from default.qux order by s"));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.result.ColumnarResult;
+import com.klarna.hiverunner.result.DoubleColumn;
+import com.klarna.hiverunner.result.LongColumn;
+import com.klarna.hiverunner.result.StringColumn;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+@RunWith(StandaloneHiveRunner.class)
+public class ColumnarQueryTest {
+
+    @HiveSQL(files = {})
+    private HiveShell hiveShell;
+
+    @Before
+    public void createTable() {
+        hiveShell.execute("create table foo (id int, amount double, name string)");
+        hiveShell.insertInto("default", "foo")
+                .addRow(1, 1.5, "a")
+                .addRow(2, 2.5, "b")
+                .addRow(3, null, "a")
+                .commit();
+    }
+
+    @Test
+    public void columnsShouldHoldPrimitiveValues() {
+        ColumnarResult result = hiveShell.executeColumnarQuery("select id, amount, name from foo order by id");
+
+        Assert.assertEquals(3, result.getRowCount());
+        Assert.assertArrayEquals(new long[]{1, 2, 3}, result.getColumn("id", LongColumn.class).getValues());
+
+        DoubleColumn amount = result.getColumn("amount", DoubleColumn.class);
+        Assert.assertEquals(4.0, amount.getDouble(0) + amount.getDouble(1), 0);
+        Assert.assertTrue(amount.isNull(2));
+
+        StringColumn name = result.getColumn("name", StringColumn.class);
+        Assert.assertEquals(Arrays.asList("a", "b"), name.getDictionary());
+        Assert.assertArrayEquals(new int[]{0, 1, 0}, name.getCodes());
+    }
+
+    @Test
+    public void aggregatesShouldBeTyped() {
+        ColumnarResult result = hiveShell.executeColumnarQuery("select count(*), sum(amount) from foo");
+
+        Assert.assertEquals(3, ((LongColumn) result.getColumn(0)).getLong(0));
+        Assert.assertEquals(4.0, ((DoubleColumn) result.getColumn(1)).getDouble(0), 0);
+    }
+
+    @Test
+    public void statementWithoutResultShouldGiveEmptyResult() {
+        ColumnarResult result = hiveShell.executeColumnarQuery("create table bar (id int)");
+
+        Assert.assertEquals(0, result.getRowCount());
+        Assert.assertEquals(0, result.getColumnCount());
+    }
+}
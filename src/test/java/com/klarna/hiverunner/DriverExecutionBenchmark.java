@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per statement latency of statements executed through the CLIService with statements executed with a
+ * Driver. Not part of the regular test run, run with <code>mvn test -Dtest=DriverExecutionBenchmark</code>.
+ */
+public class DriverExecutionBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DriverExecutionBenchmark.class);
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 200;
+
+    private static final String[] STATEMENTS = {
+            "select * from foo",
+            "describe foo",
+            "show tables",
+            "create table if not exists bar (id int)"
+    };
+
+    @Rule
+    public TemporaryFolder basedir = new TemporaryFolder();
+
+    private HiveServerContainer container;
+
+    @Before
+    public void setup() {
+        container = new HiveServerContainer(new StandaloneHiveServerContext(basedir, new HiveRunnerConfig()));
+        container.init(new HashMap<String, String>(), new HashMap<String, String>());
+        container.executeScript("create table foo (id int, name string);"
+                + "insert into table foo values (1, 'a'), (2, 'b'), (3, 'c');");
+    }
+
+    @After
+    public void tearDown() {
+        container.tearDown();
+    }
+
+    @Test
+    public void compareStatementLatency() {
+        for (String statement : STATEMENTS) {
+            container.setDriverExecutionEnabled(false);
+            List<Object[]> expected = container.executeStatement(statement);
+            long cliService = averageMicros(statement);
+
+            container.setDriverExecutionEnabled(true);
+            List<Object[]> actual = container.executeStatement(statement);
+            long driver = averageMicros(statement);
+
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertArrayEquals(expected.get(i), actual.get(i));
+            }
+            LOGGER.info("'{}': CLIService {} us, Driver {} us per statement", statement, cliService, driver);
+        }
+    }
+
+    private long averageMicros(String statement) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            container.executeStatement(statement);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            container.executeStatement(statement);
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / ITERATIONS;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hive.service.cli.HiveSQLException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Verifies that statements executed with a Driver give the same results as statements executed through the CLIService.
+ */
+public class DriverExecutionTest {
+
+    @Rule
+    public TemporaryFolder basedir = new TemporaryFolder();
+
+    private HiveServerContainer container;
+
+    @Before
+    public void setup() {
+        container = new HiveServerContainer(new StandaloneHiveServerContext(basedir, new HiveRunnerConfig()));
+        container.init(new HashMap<String, String>(), new HashMap<String, String>());
+        container.executeScript("create table foo (id int, amount bigint, price decimal(10,2), name string);"
+                + "insert into table foo values (1, 10, 1.5, 'a'), (2, null, 2.25, null);");
+    }
+
+    @After
+    public void tearDown() {
+        container.tearDown();
+    }
+
+    @Test
+    public void queryResultShouldMatchCliService() {
+        assertSameResult("select * from foo order by id");
+        assertSameResult("select * from foo");
+        assertSameResult("describe foo");
+        assertSameResult("show tables");
+    }
+
+    @Test
+    public void statementsShouldShareSession() {
+        container.setDriverExecutionEnabled(true);
+        container.executeStatement("set hivevar:table=foo");
+        container.executeStatement("create table bar as select * from ${hivevar:table}");
+
+        Assert.assertEquals(2, container.executeStatement("select * from bar").size());
+    }
+
+    @Test(expected = HiveSQLException.class)
+    public void failureShouldBeCausedByHiveSQLException() throws Throwable {
+        container.setDriverExecutionEnabled(true);
+        try {
+            container.executeStatement("select * from no_such_table");
+        } catch (IllegalArgumentException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void smallFetchSizeShouldReturnAllRows() {
+        container.setDriverExecutionEnabled(true);
+        container.setFetchSize(1);
+        Assert.assertEquals(2, container.executeStatement("select * from foo").size());
+    }
+
+    @Test
+    public void openDriverResultsShouldCountAsOpenOperations() {
+        container.setDriverExecutionEnabled(true);
+        container.setMaxOpenOperations(1);
+
+        try (CloseableIterator<Object[]> result = container.executeStatementStream("select * from foo")) {
+            Assert.assertEquals(1, container.getOpenOperationCount());
+            try {
+                container.executeStatementStream("select * from foo");
+                Assert.fail("Open operation limit not enforced");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+        }
+        Assert.assertEquals(0, container.getOpenOperationCount());
+    }
+
+    @Test
+    public void sessionStateShouldNotBeLeftOnTheCallingThread() {
+        container.setDriverExecutionEnabled(true);
+        SessionState callerSessionState = SessionState.get();
+        try (CloseableIterator<Object[]> result = container.executeStatementStream("select * from foo")) {
+            Assert.assertSame(callerSessionState, SessionState.get());
+            result.next();
+            Assert.assertSame(callerSessionState, SessionState.get());
+        }
+        Assert.assertSame(callerSessionState, SessionState.get());
+    }
+
+    @Test
+    public void tearDownShouldCloseOpenDriverResults() {
+        container.setDriverExecutionEnabled(true);
+        container.executeStatementStream("select * from foo");
+        container.tearDown();
+        Assert.assertEquals(0, container.getOpenOperationCount());
+    }
+
+    private void assertSameResult(String hiveql) {
+        container.setDriverExecutionEnabled(false);
+        List<Object[]> expected = container.executeStatement(hiveql);
+        container.setDriverExecutionEnabled(true);
+        List<Object[]> actual = container.executeStatement(hiveql);
+
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveRunnerSetup;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies that queries limited to their first rows return those rows only and release the query.
+ */
+@RunWith(StandaloneHiveRunner.class)
+public class FirstRowsTest {
+
+    @HiveRunnerSetup
+    public final static HiveRunnerConfig CONFIG = new HiveRunnerConfig() {{
+        setFetchSize(7);
+        setResultPrefetchEnabled(true);
+    }};
+
+    @HiveSQL(files = {}, autoStart = false)
+    private HiveShell hiveShell;
+
+    private final List<String> rows = new ArrayList<>();
+
+    @Test
+    public void executeQueryShouldReturnFirstRows() throws IOException {
+        startWithRows(250);
+        Assert.assertEquals(rows.subList(0, 10), hiveShell.executeQuery("select * from foo", 10));
+        Assert.assertEquals(rows.subList(0, 1), hiveShell.executeQuery("select * from foo", 1));
+        Assert.assertEquals(rows, hiveShell.executeQuery("select * from foo", 1000));
+    }
+
+    @Test
+    public void zeroMaxRowsShouldReturnNoRows() throws IOException {
+        startWithRows(10);
+        Assert.assertTrue(hiveShell.executeQuery("select * from foo", 0).isEmpty());
+    }
+
+    @Test
+    public void streamShouldStopAtMaxRows() throws IOException {
+        startWithRows(50);
+
+        List<Object[]> actual = new ArrayList<>();
+        try (CloseableIterator<Object[]> iterator = hiveShell.executeStatementStream("select * from foo", 3)) {
+            while (iterator.hasNext()) {
+                actual.add(iterator.next());
+            }
+        }
+        Assert.assertEquals(3, actual.size());
+        Assert.assertArrayEquals(new Object[]{rows.get(2)}, actual.get(2));
+        Assert.assertEquals(rows, hiveShell.executeQuery("select * from foo"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMaxRowsShouldFail() throws IOException {
+        startWithRows(1);
+        hiveShell.executeQuery("select * from foo", -1);
+    }
+
+    private void startWithRows(int count) throws IOException {
+        hiveShell.setHiveConfValue("location", "${hiveconf:hadoop.tmp.dir}/foo");
+        hiveShell.addSetupScript("create table foo (s string) location '${hiveconf:location}'");
+        OutputStream ros = hiveShell.getResourceOutputStream("${hiveconf:location}/foo.data");
+        for (int i = 0; i < count; i++) {
+            String row = "row" + i;
+            rows.add(row);
+            ros.write((row + "\n").getBytes());
+        }
+        hiveShell.start();
+    }
+}
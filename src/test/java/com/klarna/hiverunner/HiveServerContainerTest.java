@@ -74,6 +74,152 @@ public class HiveServerContainerTest {
         container.tearDown();
     }
 
+    @Test
+    public void resetShouldDropCreatedDatabasesAndTables() {
+        container.executeScript("create database foo; create table foo.bar (id int);"
+                + "create table default.baz (id int); create table default.dropped (id int);"
+                + "drop table default.dropped;");
+
+        container.reset();
+        container.init(new HashMap<String, String>(), new HashMap<String, String>());
+
+        List<Object[]> databases = container.executeStatement("show databases");
+        Assert.assertEquals(1, databases.size());
+        Assert.assertArrayEquals(new Object[]{"default"}, databases.get(0));
+        Assert.assertTrue(container.executeStatement("show tables in default").isEmpty());
+    }
+
+    @Test
+    public void resetShouldDropRenamedTables() {
+        container.executeScript("create database foo; create table default.bar (id int);"
+                + "alter table default.bar rename to default.baz;"
+                + "create table foo.qux (id int); alter table foo.qux rename to default.quux;");
+
+        container.reset();
+        container.init(new HashMap<String, String>(), new HashMap<String, String>());
+
+        Assert.assertEquals(1, container.executeStatement("show databases").size());
+        Assert.assertTrue(container.executeStatement("show tables in default").isEmpty());
+    }
+
+    @Test
+    public void resetShouldOnlyDropObjectsCreatedSinceLastReset() {
+        container.executeScript("create database foo;");
+        container.reset();
+        container.init(new HashMap<String, String>(), new HashMap<String, String>());
+
+        container.executeScript("create database foo; create table foo.bar (id int);");
+        container.reset();
+        container.init(new HashMap<String, String>(), new HashMap<String, String>());
+
+        Assert.assertEquals(1, container.executeStatement("show databases").size());
+    }
+
+    @Test
+    public void drainedResultShouldCloseOperation() {
+        CloseableIterator<Object[]> result = container.executeStatementStream("show databases");
+        Assert.assertEquals(1, container.getOpenOperationCount());
+
+        Assert.assertArrayEquals(new Object[]{"default"}, result.next());
+        Assert.assertFalse(result.hasNext());
+        Assert.assertEquals(0, container.getOpenOperationCount());
+    }
+
+    @Test
+    public void closedResultShouldCloseOperation() {
+        try (CloseableIterator<Object[]> result = container.executeStatementStream("show databases")) {
+            Assert.assertEquals(1, container.getOpenOperationCount());
+        }
+        Assert.assertEquals(0, container.getOpenOperationCount());
+    }
+
+    @Test
+    public void resultLimitedToMaxRowsShouldCloseOperation() {
+        container.executeScript("create database foo; create database bar;");
+        CloseableIterator<Object[]> result = container.executeStatementStream("show databases", 2);
+        Assert.assertEquals(1, container.getOpenOperationCount());
+
+        result.next();
+        result.next();
+        Assert.assertEquals(0, container.getOpenOperationCount());
+        Assert.assertFalse(result.hasNext());
+    }
+
+    @Test
+    public void failedFetchShouldCloseOperation() {
+        container.executeScript("create table foo (id int); insert into table foo values (1), (2);");
+        // Converted to a fetch task, so the assertion fails while the result is fetched
+        CloseableIterator<Object[]> result = container.executeStatementStream("select assert_true(id < 2) from foo");
+        try {
+            while (result.hasNext()) {
+                result.next();
+            }
+            Assert.fail("Expected the fetch to fail");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(0, container.getOpenOperationCount());
+        }
+    }
+
+    @Test
+    public void tooManyOpenOperationsShouldFail() {
+        container.setMaxOpenOperations(1);
+        try (CloseableIterator<Object[]> result = container.executeStatementStream("show databases")) {
+            try {
+                container.executeStatementStream("show databases");
+                Assert.fail("Expected the max open operations to be enforced");
+            } catch (IllegalStateException e) {
+                Assert.assertEquals(1, container.getOpenOperationCount());
+            }
+        }
+        Assert.assertEquals(1, container.executeStatement("show databases").size());
+    }
+
+    @Test
+    public void repeatedQueryShouldHitResultCache() {
+        container.setResultCacheEnabled(true);
+        container.executeScript("create table foo (id int); insert into table foo values (1), (2);");
+
+        Assert.assertEquals(2, container.executeStatement("select * from foo").size());
+        Assert.assertEquals(2, container.executeStatement("select *  from foo;").size());
+        Assert.assertEquals(1, container.getResultCache().getHitCount());
+    }
+
+    @Test
+    public void writeShouldInvalidateCachedResults() {
+        container.setResultCacheEnabled(true);
+        container.executeScript("create table foo (id int); create table bar (id int);"
+                + "insert into table foo values (1);");
+        container.executeStatement("select * from foo");
+        container.executeStatement("select * from bar");
+
+        container.executeStatement("insert into table foo values (2)");
+
+        Assert.assertEquals(2, container.executeStatement("select * from foo").size());
+        Assert.assertEquals(0, container.executeStatement("select * from bar").size());
+        Assert.assertEquals(1, container.getResultCache().getHitCount());
+    }
+
+    @Test
+    public void nonDeterministicQueryShouldNotBeCached() {
+        container.setResultCacheEnabled(true);
+        container.executeScript("create table foo (id int); insert into table foo values (1);");
+
+        container.executeStatement("select rand() from foo");
+        container.executeStatement("select rand() from foo");
+        Assert.assertEquals(0, container.getResultCache().size());
+    }
+
+    @Test
+    public void runtimeConstantQueryShouldNotBeCached() {
+        container.setResultCacheEnabled(true);
+        container.executeScript("create table foo (id int); insert into table foo values (1);");
+
+        container.executeStatement("select current_timestamp() from foo");
+        container.executeStatement("select unix_timestamp() from foo");
+        container.executeStatement("select current_date() from foo");
+        Assert.assertEquals(0, container.getResultCache().size());
+    }
+
     @Test(expected = HiveSQLException.class)
     public void testInvalidQuery() throws Throwable {
         try {
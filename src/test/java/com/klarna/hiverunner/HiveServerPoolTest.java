@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+
+public class HiveServerPoolTest {
+
+    private HiveServerPool pool;
+
+    @Before
+    public void setup() {
+        pool = new HiveServerPool(1);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void releasedHiveServerShouldBeLeasedAgain() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+
+        HiveServerContainer first = pool.lease(config);
+        pool.release(first);
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        HiveServerContainer second = pool.lease(config);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(0, pool.getIdleCount());
+        pool.release(second);
+    }
+
+    @Test
+    public void hiveServersShouldBePooledPerHiveConfOverride() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        HiveRunnerConfig otherConfig = new HiveRunnerConfig(new Properties());
+        otherConfig.getHiveConfSystemOverride().put("foo", "bar");
+
+        HiveServerContainer first = pool.lease(config);
+        pool.release(first);
+
+        HiveServerContainer second = pool.lease(otherConfig);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals("bar", second.getHiveConf().get("foo"));
+        pool.release(second);
+    }
+
+    @Test
+    public void hiveServerReturnedToFullPoolShouldBeTornDown() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+
+        HiveServerContainer first = pool.lease(config);
+        HiveServerContainer second = pool.lease(config);
+        Assert.assertNotSame(first, second);
+
+        pool.release(first);
+        pool.release(second);
+
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertFalse(second.isStarted());
+        Assert.assertFalse(second.getBaseDir().getRoot().exists());
+    }
+
+    @Test
+    public void poolShouldBeSizedByTheConfigOfTheFirstLease() {
+        pool.close();
+        pool = new HiveServerPool(HiveServerPool.UNSIZED);
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        config.setHiveServerPoolSize(1);
+        HiveRunnerConfig largerPoolConfig = new HiveRunnerConfig(new Properties());
+        largerPoolConfig.setHiveServerPoolSize(2);
+
+        HiveServerContainer first = pool.lease(config);
+        HiveServerContainer second = pool.lease(largerPoolConfig);
+
+        pool.release(first);
+        pool.release(second);
+
+        Assert.assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void unhealthyHiveServerShouldBeReplaced() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+
+        HiveServerContainer first = pool.lease(config);
+        pool.release(first);
+        first.getBaseDir().delete();
+
+        HiveServerContainer second = pool.lease(config);
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(second.isHealthy());
+        pool.release(second);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseOfUnknownHiveServerShouldFail() {
+        HiveServerContainer container = pool.lease(new HiveRunnerConfig(new Properties()));
+        pool.release(container);
+        pool.release(container);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Properties;
+
+public class HiveServerPreBooterTest {
+
+    @Test
+    public void eachTakeShouldReturnANewStartedHiveServer() {
+        HiveServerPreBooter preBooter = new HiveServerPreBooter(new HiveRunnerConfig(new Properties()), "test", 2);
+        try {
+            HiveServerContainer first = preBooter.take();
+            HiveServerContainer second = preBooter.take();
+
+            Assert.assertNotSame(first, second);
+            Assert.assertTrue(first.isStarted());
+            Assert.assertTrue(second.isStarted());
+            Assert.assertNotEquals(first.getBaseDir().getRoot(), second.getBaseDir().getRoot());
+
+            HiveServers.tearDownAndDelete(first);
+            HiveServers.tearDownAndDelete(second);
+        } finally {
+            preBooter.close();
+        }
+    }
+
+    @Test
+    public void takeBeyondExpectedShouldBootOnDemand() {
+        HiveServerPreBooter preBooter = new HiveServerPreBooter(new HiveRunnerConfig(new Properties()), "test", 1);
+        try {
+            HiveServers.tearDownAndDelete(preBooter.take());
+
+            HiveServerContainer container = preBooter.take();
+            Assert.assertTrue(container.isStarted());
+            HiveServers.tearDownAndDelete(container);
+        } finally {
+            preBooter.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(StandaloneHiveRunner.class)
+public class HiveSessionTest {
+
+    @HiveSetupScript
+    private String setup = "create table foo (s string) partitioned by (p string);";
+
+    @HiveSQL(files = {})
+    private HiveShell hiveShell;
+
+    @Test
+    public void sessionsShouldHaveTheirOwnHiveConfAndHiveVars() {
+        try (HiveSession first = hiveShell.openSession(Collections.singletonMap("foo", "first"),
+                Collections.singletonMap("bar", "first"));
+             HiveSession second = hiveShell.openSession(Collections.singletonMap("foo", "second"),
+                     Collections.singletonMap("bar", "second"))) {
+
+            first.execute("set foo=changed");
+
+            Assert.assertEquals("changed first", first.expandVariableSubstitutes("${hiveconf:foo} ${hivevar:bar}"));
+            Assert.assertEquals("second second", second.expandVariableSubstitutes("${hiveconf:foo} ${hivevar:bar}"));
+            Assert.assertNull(hiveShell.getHiveConf().get("foo"));
+        }
+    }
+
+    @Test
+    public void sessionsShouldSeeTablesOfTheShell() {
+        try (HiveSession session = hiveShell.openSession()) {
+            session.execute("insert into table foo partition (p='a') values ('x')");
+        }
+        Assert.assertEquals(Arrays.asList("x\ta"), hiveShell.executeQuery("select * from foo"));
+    }
+
+    @Test
+    public void sessionsShouldStartInTheCurrentDatabaseOfTheShell() {
+        hiveShell.execute("create database bar; use bar;");
+        try (HiveSession session = hiveShell.openSession()) {
+            Assert.assertEquals(Arrays.asList("bar"), session.executeQuery("select current_database()"));
+        }
+    }
+
+    @Test
+    public void sessionsMayBeUsedConcurrently() throws Exception {
+        List<String> partitions = Arrays.asList("a", "b", "c");
+        ExecutorService executor = Executors.newFixedThreadPool(partitions.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final String partition : partitions) {
+                final HiveSession session = hiveShell.openSession();
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        try {
+                            session.execute("insert overwrite table foo partition (p='" + partition + "') " +
+                                    "values ('" + partition + "')");
+                        } finally {
+                            session.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(Arrays.asList("a\ta", "b\tb", "c\tc"),
+                hiveShell.executeQuery("select * from foo order by s"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedSessionShouldNotBeUsable() {
+        HiveSession session = hiveShell.openSession();
+        session.close();
+        session.execute("show tables");
+    }
+
+    @Test
+    public void sessionsLeftOpenShouldBeClosedByTearDown() {
+        hiveShell.openSession();
+    }
+}
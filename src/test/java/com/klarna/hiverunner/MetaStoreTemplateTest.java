@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+public class MetaStoreTemplateTest {
+
+    @Test
+    public void templateShouldBeBuiltOncePerMetaStoreConfiguration() {
+        Assert.assertNotNull(template());
+        Assert.assertSame(template(), template());
+
+        HiveConf otherServer = new HiveConf();
+        otherServer.setVar(HiveConf.ConfVars.METASTORECONNECTURLKEY, "jdbc:hsqldb:mem:" + UUID.randomUUID());
+        otherServer.setVar(HiveConf.ConfVars.METASTOREWAREHOUSE, "/tmp/" + UUID.randomUUID());
+        Assert.assertSame(template(), MetaStoreTemplate.getInstance(otherServer));
+    }
+
+    @Test
+    public void metaStoreSettingsShouldKeyTheTemplate() {
+        HiveConf overridden = new HiveConf();
+        overridden.set("datanucleus.identifierFactory", "datanucleus1");
+
+        Assert.assertNotEquals(MetaStoreTemplate.metaStoreSettings(new HiveConf()),
+                MetaStoreTemplate.metaStoreSettings(overridden));
+        Assert.assertEquals("datanucleus1",
+                MetaStoreTemplate.metaStoreSettings(overridden).get("datanucleus.identifierFactory"));
+    }
+
+    @Test
+    public void templateShouldOnlyContainPublicSchema() {
+        for (String statement : template().getStatements()) {
+            Assert.assertFalse(statement, statement.startsWith("CREATE USER "));
+            Assert.assertFalse(statement, statement.startsWith("SET "));
+            Assert.assertFalse(statement, statement.contains("SYSTEM_LOBS"));
+        }
+    }
+
+    @Test
+    public void clonedDatabaseShouldHaveSchemaButNoDatabases() throws SQLException {
+        String url = "jdbc:hsqldb:mem:" + UUID.randomUUID().toString();
+        template().cloneInto(url, "APP", "mine");
+
+        try (Connection connection = DriverManager.getConnection(url, "APP", "mine");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM DBS")) {
+            Assert.assertTrue(resultSet.next());
+            Assert.assertEquals(0, resultSet.getInt(1));
+        }
+    }
+
+    private static MetaStoreTemplate template() {
+        return MetaStoreTemplate.getInstance(new HiveConf());
+    }
+}
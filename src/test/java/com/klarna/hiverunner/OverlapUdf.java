@@ -0,0 +1,36 @@
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.IntWritable;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers the statement it is called from and waits until another statement called it too. Returns false if no
+ * other statement showed up within the timeout, i.e. if the statements did not run at the same time.
+ */
+@UDFType(deterministic = false)
+public class OverlapUdf extends UDF {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private static final Set<Integer> STATEMENTS = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    public static void reset() {
+        STATEMENTS.clear();
+    }
+
+    public BooleanWritable evaluate(IntWritable statement) throws InterruptedException {
+        STATEMENTS.add(statement.get());
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (STATEMENTS.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return new BooleanWritable(STATEMENTS.size() >= 2);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveRunnerSetup;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Verifies that setup statements executed concurrently end up with the same state as when executed one by one.
+ */
+@RunWith(StandaloneHiveRunner.class)
+public class ParallelSetupScriptTest {
+
+    @HiveRunnerSetup
+    public final static HiveRunnerConfig CONFIG = new HiveRunnerConfig() {{
+        setSetupScriptParallelism(4);
+    }};
+
+    @HiveSetupScript
+    private final String setup =
+            "create database bar;"
+                    + "create table bar.source (id int);"
+                    + "insert into table bar.source values (1), (2), (3);"
+                    + "create table bar.even as select id from bar.source where id % 2 = 0;"
+                    + "create table bar.odd as select id from bar.source where id % 2 = 1;"
+                    + "create table bar.all_ids as select id from ("
+                    + "  select id from bar.even union all select id from bar.odd) u;"
+                    + "use bar;"
+                    + "create table copy as select * from source;";
+
+    @HiveSQL(files = {})
+    private HiveShell hiveShell;
+
+    @Test
+    public void dependentStatementsShouldSeeEarlierResults() {
+        Assert.assertEquals(Arrays.asList("2"), hiveShell.executeQuery("select * from bar.even"));
+        Assert.assertEquals(Arrays.asList("1", "3"), hiveShell.executeQuery("select * from bar.odd order by id"));
+        Assert.assertEquals(Arrays.asList("1", "2", "3"),
+                hiveShell.executeQuery("select * from bar.all_ids order by id"));
+        Assert.assertEquals(Arrays.asList("1", "2", "3"),
+                hiveShell.executeQuery("select * from bar.copy order by id"));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveRunnerSetup;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies that test methods run concurrently on isolated sessions. Both test methods use the same table name and wait
+ * for each other to make sure that they overlap.
+ */
+@RunWith(ParallelStandaloneHiveRunner.class)
+public class ParallelStandaloneHiveRunnerTest {
+
+    @HiveRunnerSetup
+    public final static HiveRunnerConfig CONFIG = new HiveRunnerConfig() {{
+        setParallelism(2);
+    }};
+
+    private static final CountDownLatch BOTH_STARTED = new CountDownLatch(2);
+
+    @HiveSQL(files = {}, autoStart = false)
+    private HiveShell hiveShell;
+
+    @Test
+    public void firstTestMethod() throws InterruptedException {
+        verifyIsolation("first");
+    }
+
+    @Test
+    public void secondTestMethod() throws InterruptedException {
+        verifyIsolation("second");
+    }
+
+    private void verifyIsolation(String value) throws InterruptedException {
+        hiveShell.setHiveConfValue("value", value);
+        hiveShell.addResource("${hiveconf:hadoop.tmp.dir}/foo/data.csv", value + "\n");
+        hiveShell.addSetupScript("create table foo (s string) location '${hiveconf:hadoop.tmp.dir}/foo'");
+        hiveShell.start();
+
+        BOTH_STARTED.countDown();
+        Assert.assertTrue("Test methods did not run concurrently", BOTH_STARTED.await(120, TimeUnit.SECONDS));
+
+        hiveShell.execute("create table bar as select s from foo");
+
+        Assert.assertEquals(Arrays.asList(value), hiveShell.executeQuery("select * from bar"));
+        Assert.assertEquals(value, hiveShell.getHiveConf().get("value"));
+        Assert.assertEquals(Arrays.asList("bar", "foo"), hiveShell.executeQuery("show tables"));
+    }
+}
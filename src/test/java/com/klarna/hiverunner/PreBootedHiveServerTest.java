@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveProperties;
+import com.klarna.hiverunner.annotations.HiveRunnerSetup;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.apache.commons.collections.MapUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Verifies that each test method gets a HiveServer of its own when the HiveServers are booted in the background.
+ */
+@RunWith(StandaloneHiveRunner.class)
+public class PreBootedHiveServerTest {
+
+    @HiveRunnerSetup
+    public final static HiveRunnerConfig CONFIG = new HiveRunnerConfig() {{
+        setHiveServerPreBootEnabled(true);
+    }};
+
+    private static final Set<File> BASE_DIRS = new HashSet<>();
+
+    @HiveProperties
+    public Map<String, String> hiveProperties = MapUtils.putAll(new HashMap(), new String[]{"foo", "bar"});
+
+    @HiveSQL(files = {})
+    private HiveShell hiveShell;
+
+    @AfterClass
+    public static void eachTestMethodShouldHaveAHiveServerOfItsOwn() {
+        Assert.assertEquals(2, BASE_DIRS.size());
+        for (File baseDir : BASE_DIRS) {
+            Assert.assertFalse(baseDir.exists());
+        }
+    }
+
+    @Test
+    public void firstTestMethod() {
+        verifyIsolationAndLeaveResidue();
+    }
+
+    @Test
+    public void secondTestMethod() {
+        verifyIsolationAndLeaveResidue();
+    }
+
+    private void verifyIsolationAndLeaveResidue() {
+        BASE_DIRS.add(hiveShell.getBaseDir().getRoot());
+
+        Assert.assertEquals("bar", hiveShell.getHiveConf().get("foo"));
+        Assert.assertEquals(Arrays.asList("default"), hiveShell.executeQuery("show databases"));
+
+        hiveShell.execute("create database foo");
+        hiveShell.execute("create table default.qux (s string)");
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.sql.StatementDependencies;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class ResultCacheTest {
+
+    private static final Set<String> READS_FOO = Collections.singleton("default.foo");
+    private static final List<Object[]> ROWS = Collections.singletonList(new Object[]{1});
+
+    @Test
+    public void cachedResultShouldBeReturnedAsCopy() {
+        ResultCache cache = new ResultCache();
+        cache.put("s", "select * from foo", READS_FOO, ROWS, cache.getGeneration());
+
+        List<Object[]> cached = cache.get("s", "select  *  from foo");
+        Assert.assertArrayEquals(ROWS.get(0), cached.get(0));
+        Assert.assertNotSame(ROWS.get(0), cached.get(0));
+        Assert.assertNull(cache.get("other session", "select * from foo"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void writeShouldInvalidateReadersOfTable() {
+        ResultCache cache = new ResultCache();
+        cache.put("s", "select * from foo", READS_FOO, ROWS, cache.getGeneration());
+        cache.put("s", "select * from bar", Collections.singleton("default.bar"), ROWS, cache.getGeneration());
+
+        cache.invalidate(StatementDependencies.analyze("insert into table foo select * from baz", "default"));
+
+        Assert.assertNull(cache.get("s", "select * from foo"));
+        Assert.assertNotNull(cache.get("s", "select * from bar"));
+    }
+
+    @Test
+    public void barrierShouldInvalidateAll() {
+        ResultCache cache = new ResultCache();
+        cache.put("s", "select * from foo", READS_FOO, ROWS, cache.getGeneration());
+
+        cache.invalidate(StatementDependencies.analyze("set foo=bar", "default"));
+
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void resultShouldNotBeCachedIfInvalidatedWhileExecuting() {
+        ResultCache cache = new ResultCache();
+        long generation = cache.getGeneration();
+        cache.invalidate("default", "bar");
+
+        cache.put("s", "select * from foo", READS_FOO, ROWS, generation);
+
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void bigResultShouldNotBeCached() {
+        ResultCache cache = new ResultCache(10, 0);
+        cache.put("s", "select * from foo", READS_FOO, ROWS, cache.getGeneration());
+
+        Assert.assertEquals(0, cache.size());
+    }
+}
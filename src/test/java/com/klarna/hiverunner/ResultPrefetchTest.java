@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveRunnerSetup;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies that results spanning many small pages are fetched completely and in order with prefetch.
+ */
+@RunWith(StandaloneHiveRunner.class)
+public class ResultPrefetchTest {
+
+    @HiveRunnerSetup
+    public final static HiveRunnerConfig CONFIG = new HiveRunnerConfig() {{
+        setFetchSize(7);
+        setResultPrefetchEnabled(true);
+    }};
+
+    @HiveSQL(files = {}, autoStart = false)
+    private HiveShell hiveShell;
+
+    private final List<String> rows = new ArrayList<>();
+
+    @Test
+    public void executeQueryShouldReturnAllPages() throws IOException {
+        startWithRows(250);
+        Assert.assertEquals(rows, hiveShell.executeQuery("select * from foo"));
+    }
+
+    @Test
+    public void iteratorShouldReturnAllPages() throws IOException {
+        startWithRows(250);
+
+        List<String> actual = new ArrayList<>();
+        try (CloseableIterator<String> iterator = hiveShell.executeQueryIterator("select * from foo")) {
+            while (iterator.hasNext()) {
+                actual.add(iterator.next());
+            }
+        }
+        Assert.assertEquals(rows, actual);
+    }
+
+    @Test
+    public void iteratorClosedWhilePrefetchingShouldReleaseQuery() throws IOException {
+        startWithRows(50);
+
+        try (CloseableIterator<String> iterator = hiveShell.executeQueryIterator("select * from foo")) {
+            Assert.assertEquals(rows.get(0), iterator.next());
+        }
+        Assert.assertEquals(rows, hiveShell.executeQuery("select * from foo"));
+    }
+
+    private void startWithRows(int count) throws IOException {
+        hiveShell.setHiveConfValue("location", "${hiveconf:hadoop.tmp.dir}/foo");
+        hiveShell.addSetupScript("create table foo (s string) location '${hiveconf:location}'");
+        OutputStream ros = hiveShell.getResourceOutputStream("${hiveconf:location}/foo.data");
+        for (int i = 0; i < count; i++) {
+            String row = "row" + i;
+            rows.add(row);
+            ros.write((row + "\n").getBytes());
+        }
+        hiveShell.start();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.config.HiveRunnerConfig;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class SetupStateCacheTest {
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    @Rule
+    public TemporaryFolder firstBaseDir = new TemporaryFolder();
+
+    @Rule
+    public TemporaryFolder secondBaseDir = new TemporaryFolder();
+
+    private static final Map<String, String> NO_VALUES = Collections.emptyMap();
+    private static final Map<String, byte[]> NO_RESOURCES = Collections.emptyMap();
+
+    @Test
+    public void sameSetupShouldGiveSameEntry() {
+        SetupStateCache cache = new SetupStateCache(cacheDir.getRoot(), NO_VALUES);
+        List<String> setupScripts = Arrays.asList("create database foo");
+
+        Assert.assertEquals(
+                cache.lookup(NO_VALUES, NO_VALUES, setupScripts, NO_RESOURCES).toString(),
+                cache.lookup(NO_VALUES, NO_VALUES, setupScripts, NO_RESOURCES).toString());
+    }
+
+    @Test
+    public void differentSetupShouldGiveDifferentEntries() {
+        SetupStateCache cache = new SetupStateCache(cacheDir.getRoot(), NO_VALUES);
+        List<String> setupScripts = Arrays.asList("create database foo");
+        Map<String, String> hiveVars = Collections.singletonMap("foo", "bar");
+        Map<String, byte[]> resources = Collections.singletonMap("${hiveconf:hadoop.tmp.dir}/foo", new byte[]{1});
+
+        String entry = cache.lookup(NO_VALUES, NO_VALUES, setupScripts, NO_RESOURCES).toString();
+        Assert.assertNotEquals(entry,
+                cache.lookup(NO_VALUES, NO_VALUES, Arrays.asList("create database bar"), NO_RESOURCES).toString());
+        Assert.assertNotEquals(entry, cache.lookup(NO_VALUES, hiveVars, setupScripts, NO_RESOURCES).toString());
+        Assert.assertNotEquals(entry, cache.lookup(NO_VALUES, NO_VALUES, setupScripts, resources).toString());
+        Assert.assertNotEquals(entry, new SetupStateCache(cacheDir.getRoot(), hiveVars)
+                .lookup(NO_VALUES, NO_VALUES, setupScripts, NO_RESOURCES).toString());
+    }
+
+    @Test
+    public void setupWithSessionScopedStatementsShouldNotBeCached() {
+        SetupStateCache cache = new SetupStateCache(cacheDir.getRoot(), NO_VALUES);
+
+        Assert.assertNull(cache.lookup(NO_VALUES, NO_VALUES,
+                Arrays.asList("create database foo;\n  SET hive.exec.dynamic.partition=true;"), NO_RESOURCES));
+        Assert.assertNull(cache.lookup(NO_VALUES, NO_VALUES, Arrays.asList("use foo"), NO_RESOURCES));
+        Assert.assertNull(cache.lookup(NO_VALUES, NO_VALUES,
+                Arrays.asList("create temporary function foo as 'Foo'"), NO_RESOURCES));
+    }
+
+    @Test
+    public void loadedLocalFilesShouldBePartOfTheKey() throws Exception {
+        SetupStateCache cache = new SetupStateCache(cacheDir.getRoot(), NO_VALUES);
+        File data = firstBaseDir.newFile("data.txt");
+        List<String> setupScripts = Arrays.asList("create table foo (value string);"
+                + "load data local inpath '" + data.getAbsolutePath() + "' into table foo");
+
+        Files.write(data.toPath(), "foo\n".getBytes(StandardCharsets.UTF_8));
+        String entry = cache.lookup(NO_VALUES, NO_VALUES, setupScripts, NO_RESOURCES).toString();
+        Assert.assertEquals(entry, cache.lookup(NO_VALUES, NO_VALUES, setupScripts, NO_RESOURCES).toString());
+
+        Files.write(data.toPath(), "bar\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNotEquals(entry, cache.lookup(NO_VALUES, NO_VALUES, setupScripts, NO_RESOURCES).toString());
+    }
+
+    @Test
+    public void setupWithUnhashableInputsShouldNotBeCached() {
+        SetupStateCache cache = new SetupStateCache(cacheDir.getRoot(), NO_VALUES);
+
+        Assert.assertNull(cache.lookup(NO_VALUES, NO_VALUES,
+                Arrays.asList("load data inpath '/tmp/foo' into table foo"), NO_RESOURCES));
+        Assert.assertNull(cache.lookup(NO_VALUES, NO_VALUES,
+                Arrays.asList("load data local inpath '${hiveconf:foo}/bar' into table foo"), NO_RESOURCES));
+        Assert.assertNull(cache.lookup(NO_VALUES, NO_VALUES,
+                Arrays.asList("load data local inpath '/does/not/exist' into table foo"), NO_RESOURCES));
+        Assert.assertNull(cache.lookup(NO_VALUES, NO_VALUES,
+                Arrays.asList("create function foo as 'Foo' using jar 'foo.jar'"), NO_RESOURCES));
+        Assert.assertNull(cache.lookup(NO_VALUES, NO_VALUES,
+                Arrays.asList("create function foo as 'does.not.Exist'"), NO_RESOURCES));
+        Assert.assertNotNull(cache.lookup(NO_VALUES, NO_VALUES,
+                Arrays.asList("create function foo as '" + SetupStateCacheTest.class.getName() + "'"), NO_RESOURCES));
+    }
+
+    @Test
+    public void relocateShouldOnlyReplaceTheBaseDirAtTheStartOfThePath() {
+        Assert.assertEquals("file:/new/warehouse/foo",
+                SetupStateCache.relocate("file:/old/warehouse/foo", "/old", "/new"));
+        Assert.assertEquals("file:///new", SetupStateCache.relocate("file:///old", "/old", "/new"));
+        Assert.assertEquals("/new/foo", SetupStateCache.relocate("/old/foo", "/old", "/new"));
+        Assert.assertNull(SetupStateCache.relocate("/older/foo", "/old", "/new"));
+        Assert.assertNull(SetupStateCache.relocate("/elsewhere/old/foo", "/old", "/new"));
+    }
+
+    @Test
+    public void savedStateShouldBeRestoredIntoAnotherBaseDir() throws Exception {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        SetupStateCache.Entry entry = new SetupStateCache(cacheDir.getRoot(), NO_VALUES)
+                .lookup(NO_VALUES, NO_VALUES, Arrays.asList("create database foo"), NO_RESOURCES);
+        Assert.assertFalse(entry.exists());
+
+        HiveServerContainer first = new HiveServerContainer(new StandaloneHiveServerContext(firstBaseDir, config));
+        try {
+            first.init(new HashMap<String, String>(), new HashMap<String, String>());
+            first.executeScript("create database foo; create table foo.bar (value string);");
+            File table = new File(first.getHiveConf().getVar(HiveConf.ConfVars.METASTOREWAREHOUSE),
+                    "foo.db/bar");
+            Files.write(new File(table, "data.txt").toPath(), "baz\n".getBytes(StandardCharsets.UTF_8));
+
+            entry.save(first);
+        } finally {
+            first.tearDown();
+        }
+        Assert.assertTrue(entry.exists());
+
+        HiveServerContainer second = new HiveServerContainer(new StandaloneHiveServerContext(secondBaseDir, config));
+        try {
+            second.init(new HashMap<String, String>(), new HashMap<String, String>(), entry);
+
+            List<Object[]> rows = second.executeStatement("select * from foo.bar");
+            Assert.assertEquals(1, rows.size());
+            Assert.assertEquals("baz", rows.get(0)[0]);
+
+            String location = (String) second.executeStatement("describe database foo").get(0)[2];
+            Assert.assertTrue(location, location.contains(secondBaseDir.getRoot().getAbsolutePath()));
+        } finally {
+            second.tearDown();
+        }
+    }
+}
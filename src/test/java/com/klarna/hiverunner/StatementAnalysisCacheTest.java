@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.sql.TableAccess;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class StatementAnalysisCacheTest {
+
+    @Test
+    public void sameStatementShouldHit() {
+        StatementAnalysisCache cache = new StatementAnalysisCache();
+        TableAccess first = cache.analyze("insert into table foo select * from bar", "default");
+        TableAccess second = cache.analyze("insert  into table foo\n  select * from bar;", "default");
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(Collections.singleton("default.bar"), second.getReads());
+        Assert.assertEquals(Collections.singleton("default.foo"), second.getWrites());
+    }
+
+    @Test
+    public void otherDatabaseShouldMiss() {
+        StatementAnalysisCache cache = new StatementAnalysisCache();
+        cache.analyze("select * from bar", "default");
+        TableAccess access = cache.analyze("select * from bar", "baz");
+
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(Collections.singleton("baz.bar"), access.getReads());
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementsShouldBeEvicted() {
+        StatementAnalysisCache cache = new StatementAnalysisCache(2);
+        cache.analyze("select * from foo", "default");
+        cache.analyze("select * from bar", "default");
+        cache.analyze("select * from foo", "default");
+        cache.analyze("select * from baz", "default");
+        cache.analyze("select * from foo", "default");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void normalizeShouldKeepQuotedTextAndComments() {
+        Assert.assertEquals("select 'a  b' from foo",
+                StatementAnalysisCache.normalize("  select\t'a  b'\n from   foo ;; "));
+        Assert.assertEquals("select `a  b` from foo", StatementAnalysisCache.normalize("select `a  b` from foo"));
+        Assert.assertEquals("select 'a\\'  b' from foo",
+                StatementAnalysisCache.normalize("select 'a\\'  b'  from foo"));
+        Assert.assertEquals("select a -- b  c\nfrom foo",
+                StatementAnalysisCache.normalize("select a -- b  c\n  from foo"));
+    }
+}
@@ -16,6 +16,7 @@ import com.klarna.hiverunner.HiveShell;
 import org.apache.commons.collections.MapUtils;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hive.service.cli.CLIService;
+import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -195,7 +196,66 @@ public class HiveShellBaseTest {
 		shell.executeQuery(UTF_8, Paths.get(file.toURI()), "xxx", "yyy");
 	}
 
+    @Test
+    public void lazyStartShouldNotInitHiveServerAtStart() {
+        HiveShell shell = createLazyHiveShell();
+        shell.start();
+        verify(container, Mockito.never()).init(Mockito.anyMap(), Mockito.anyMap());
+    }
+
+    @Test
+    public void lazyStartShouldInitHiveServerOnceAtFirstUse() {
+        HiveShell shell = createLazyHiveShell();
+        shell.addSetupScript("foo");
+        shell.start();
+
+        shell.execute("bar");
+        shell.getHiveConf();
+
+        verify(container, Mockito.times(1)).init(Mockito.anyMap(), Mockito.anyMap());
+        verify(container).executeScript("foo", 1);
+        verify(container).executeScript("bar");
+    }
+
+    @Test
+    public void lazyStartFailureShouldBeRethrownAtEveryUse() {
+        HiveShell shell = createLazyHiveShell();
+        shell.addSetupScript("foo");
+        RuntimeException failure = new RuntimeException("setup failed");
+        Mockito.doThrow(failure).when(container).executeScript("foo", 1);
+        shell.start();
+
+        try {
+            shell.execute("bar");
+            Assert.fail("Setup failure was not thrown");
+        } catch (RuntimeException e) {
+            Assert.assertSame(failure, e);
+        }
+        try {
+            shell.execute("bar");
+            Assert.fail("Setup failure was not rethrown");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+        verify(container, Mockito.times(1)).init(Mockito.anyMap(), Mockito.anyMap());
+        verify(container, Mockito.never()).executeScript("bar");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lazyStartShouldStillRequireStart() {
+        HiveShell shell = createLazyHiveShell();
+        shell.execute("foo");
+    }
+
     private HiveShell createHiveShell(String... keyValues) {
+        return createHiveShell(false, keyValues);
+    }
+
+    private HiveShell createLazyHiveShell(String... keyValues) {
+        return createHiveShell(true, keyValues);
+    }
+
+    private HiveShell createHiveShell(boolean lazyStart, String... keyValues) {
         Map<String, String> hiveConf = MapUtils.putAll(new HashMap(), keyValues);
         HiveConf conf = createHiveconf(hiveConf);
 
@@ -212,7 +272,8 @@ public class HiveShellBaseTest {
         List<HiveResource> hiveResources = Arrays.asList();
         List<String> scriptsUnderTest = Arrays.asList();
 
-        return new HiveShellBase(container, hiveConf, setupScripts, hiveResources, scriptsUnderTest, CommandShellEmulation.HIVE_CLI);
+        return new HiveShellBase(container, hiveConf, setupScripts, hiveResources, scriptsUnderTest, CommandShellEmulation.HIVE_CLI,
+                lazyStart, null, 1, 1);
     }
 
 
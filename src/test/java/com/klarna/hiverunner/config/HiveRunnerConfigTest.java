@@ -5,6 +5,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.klarna.hiverunner.CommandShellEmulation;
+import com.klarna.hiverunner.HiveServerScope;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -86,6 +87,29 @@ public class HiveRunnerConfigTest {
       Assert.assertEquals(CommandShellEmulation.BEELINE, config.getCommandShellEmulation());
     }
 
+    @Test
+    public void testHiveServerScope() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.HIVE_SERVER_SCOPE_PROPERTY_NAME, "class");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertEquals(HiveServerScope.CLASS, config.getHiveServerScope());
+    }
+
+    @Test
+    public void testSetHiveServerScope() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        config.setHiveServerScope(HiveServerScope.CLASS);
+        Assert.assertEquals(HiveServerScope.CLASS, config.getHiveServerScope());
+    }
+
+    @Test
+    public void testHiveServerPoolSize() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.HIVE_SERVER_POOL_SIZE_PROPERTY_NAME, "3");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertEquals(3, config.getHiveServerPoolSize());
+    }
+
     @Test
     public void testEnableTimeoutDefault() {
         HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
@@ -111,4 +135,190 @@ public class HiveRunnerConfigTest {
         Assert.assertEquals(CommandShellEmulation.HIVE_CLI, config.getCommandShellEmulation());
     }
 
+    @Test
+    public void testHiveServerScopeDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveServerScope.METHOD, config.getHiveServerScope());
+    }
+
+    @Test
+    public void testMetaStoreTemplateEnabled() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.METASTORE_TEMPLATE_ENABLED_PROPERTY_NAME, "true");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertTrue(config.isMetaStoreTemplateEnabled());
+    }
+
+    @Test
+    public void testMetaStoreTemplateEnabledDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.METASTORE_TEMPLATE_ENABLED_DEFAULT, config.isMetaStoreTemplateEnabled());
+    }
+
+    @Test
+    public void testHiveServerPreBootEnabled() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.HIVE_SERVER_PRE_BOOT_PROPERTY_NAME, "true");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertTrue(config.isHiveServerPreBootEnabled());
+    }
+
+    @Test
+    public void testHiveServerPreBootEnabledDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.HIVE_SERVER_PRE_BOOT_DEFAULT, config.isHiveServerPreBootEnabled());
+    }
+
+    @Test
+    public void testLazyStartEnabled() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.LAZY_START_PROPERTY_NAME, "true");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertTrue(config.isLazyStartEnabled());
+    }
+
+    @Test
+    public void testLazyStartEnabledDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.LAZY_START_DEFAULT, config.isLazyStartEnabled());
+    }
+
+    @Test
+    public void testParallelism() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.PARALLELISM_PROPERTY_NAME, "3");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertEquals(3, config.getParallelism());
+    }
+
+    @Test
+    public void testParallelismDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.PARALLELISM_DEFAULT, config.getParallelism());
+    }
+
+    @Test
+    public void testSetupStateCacheDir() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.SETUP_STATE_CACHE_DIR_PROPERTY_NAME, "target/cache");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertEquals("target/cache", config.getSetupStateCacheDir());
+    }
+
+    @Test
+    public void testSetupStateCacheDirDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.SETUP_STATE_CACHE_DIR_DEFAULT, config.getSetupStateCacheDir());
+    }
+
+    @Test
+    public void testAsyncTearDown() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.ASYNC_TEAR_DOWN_PROPERTY_NAME, "true");
+        sysProps.put(HiveRunnerConfig.ASYNC_TEAR_DOWN_LIMIT_PROPERTY_NAME, "4");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertTrue(config.isAsyncTearDownEnabled());
+        Assert.assertEquals(4, config.getAsyncTearDownLimit());
+    }
+
+    @Test
+    public void testAsyncTearDownDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.ASYNC_TEAR_DOWN_DEFAULT, config.isAsyncTearDownEnabled());
+        Assert.assertEquals(HiveRunnerConfig.ASYNC_TEAR_DOWN_LIMIT_DEFAULT, config.getAsyncTearDownLimit());
+    }
+
+    @Test
+    public void testFetchSizeAndResultPrefetch() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.FETCH_SIZE_PROPERTY_NAME, "1000");
+        sysProps.put(HiveRunnerConfig.RESULT_PREFETCH_PROPERTY_NAME, "true");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertEquals(1000, config.getFetchSize());
+        Assert.assertTrue(config.isResultPrefetchEnabled());
+    }
+
+    @Test
+    public void testFetchSizeAndResultPrefetchDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.FETCH_SIZE_DEFAULT, config.getFetchSize());
+        Assert.assertEquals(HiveRunnerConfig.RESULT_PREFETCH_DEFAULT, config.isResultPrefetchEnabled());
+    }
+
+    @Test
+    public void testMaxOpenOperations() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.MAX_OPEN_OPERATIONS_PROPERTY_NAME, "10");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertEquals(10, config.getMaxOpenOperations());
+    }
+
+    @Test
+    public void testMaxOpenOperationsDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.MAX_OPEN_OPERATIONS_DEFAULT, config.getMaxOpenOperations());
+    }
+
+    @Test
+    public void testSetupScriptParallelism() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.SETUP_SCRIPT_PARALLELISM_PROPERTY_NAME, "4");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertEquals(4, config.getSetupScriptParallelism());
+    }
+
+    @Test
+    public void testSetupScriptParallelismDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.SETUP_SCRIPT_PARALLELISM_DEFAULT, config.getSetupScriptParallelism());
+    }
+
+    @Test
+    public void testResultCache() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.RESULT_CACHE_PROPERTY_NAME, "true");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertTrue(config.isResultCacheEnabled());
+    }
+
+    @Test
+    public void testResultCacheDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.RESULT_CACHE_DEFAULT, config.isResultCacheEnabled());
+    }
+
+    @Test
+    public void testDriverExecution() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.DRIVER_EXECUTION_PROPERTY_NAME, "true");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertTrue(config.isDriverExecutionEnabled());
+    }
+
+    @Test
+    public void testDriverExecutionDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.DRIVER_EXECUTION_DEFAULT, config.isDriverExecutionEnabled());
+    }
+
+    @Test
+    public void testInsertParallelism() {
+        Properties sysProps = new Properties();
+        sysProps.put(HiveRunnerConfig.INSERT_PARALLELISM_PROPERTY_NAME, "4");
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties(sysProps));
+        Assert.assertEquals(4, config.getInsertParallelism());
+    }
+
+    @Test
+    public void testInsertParallelismDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.INSERT_PARALLELISM_DEFAULT, config.getInsertParallelism());
+    }
+
+    @Test
+    public void testHiveServerPoolSizeDefault() {
+        HiveRunnerConfig config = new HiveRunnerConfig(new Properties());
+        Assert.assertEquals(HiveRunnerConfig.HIVE_SERVER_POOL_SIZE_DEFAULT, config.getHiveServerPoolSize());
+    }
+
 }
\ No newline at end of file
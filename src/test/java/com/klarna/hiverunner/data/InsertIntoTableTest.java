@@ -4,6 +4,8 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -70,6 +72,14 @@ public class InsertIntoTableTest {
     verify(builder).addRowsFromTsv(any(File.class));
   }
 
+  @Test
+  public void addRowsFromDelimitedInParallel() {
+    File file = new File("data");
+    insert.addRowsFromDelimited(file, ",", "NULL", 4);
+
+    verify(builder).addRowsFromDelimited(file, ",", "NULL", 4);
+  }
+
   @Test
   public void addRowsWithFileParser() {
     insert.addRowsFrom(any(File.class), any(FileParser.class));
@@ -77,6 +87,21 @@ public class InsertIntoTableTest {
     verify(builder).addRowsFrom(any(File.class), any(FileParser.class));
   }
 
+  @Test
+  public void addRowsFromIterator() {
+    Iterator<Object[]> rows = Collections.<Object[]> emptyIterator();
+    insert.addRows(rows);
+
+    verify(builder).addRows(rows);
+  }
+
+  @Test
+  public void withSpillThreshold() {
+    insert.withSpillThreshold(10);
+
+    verify(builder).withSpillThreshold(10);
+  }
+
   @Test
   public void copyRow() {
     insert.copyRow();
@@ -97,6 +122,7 @@ public class InsertIntoTableTest {
 
     verify(builder).build();
     verify(inserter).insert(any(Multimap.class));
+    verify(builder).clear();
 
   }
 }
@@ -0,0 +1,60 @@
+package com.klarna.hiverunner.data;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hive.hcatalog.data.DefaultHCatRecord;
+import org.apache.hive.hcatalog.data.HCatRecord;
+import org.junit.Test;
+
+public class SpillableRowsTest {
+
+  @Test
+  public void spilledAndBufferedRowsAreIteratedInOrder() {
+    SpillableRows rows = new SpillableRows("test");
+    rows.add(record("a", 1));
+    rows.spill();
+    rows.add(record("b", 2));
+    rows.spill();
+    rows.add(record("c", 3));
+
+    assertEquals(3, rows.size());
+    assertEquals(1, rows.buffered());
+    assertEquals(asList(asList((Object) "a", 1), asList((Object) "b", 2), asList((Object) "c", 3)), values(rows));
+    assertEquals(3, values(rows).size());
+
+    rows.delete();
+    assertEquals(0, rows.size());
+  }
+
+  @Test
+  public void spilledRowsKeepTypes() {
+    SpillableRows rows = new SpillableRows("test");
+    rows.add(new DefaultHCatRecord(asList((Object) HiveDecimal.create(new BigDecimal("1.50")),
+        Date.valueOf("2015-10-14"), null, 3L)));
+    rows.spill();
+
+    assertEquals(asList(asList((Object) HiveDecimal.create(new BigDecimal("1.50")), Date.valueOf("2015-10-14"), null,
+        3L)), values(rows));
+    rows.delete();
+  }
+
+  private static HCatRecord record(Object... values) {
+    return new DefaultHCatRecord(asList(values));
+  }
+
+  private static List<List<Object>> values(SpillableRows rows) {
+    List<List<Object>> values = new ArrayList<>();
+    for (HCatRecord row : rows) {
+      values.add(row.getAll());
+    }
+    return values;
+  }
+
+}
@@ -2,6 +2,10 @@ package com.klarna.hiverunner.data;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -16,12 +20,17 @@ import org.apache.hive.hcatalog.api.HCatTable;
 import org.apache.hive.hcatalog.common.HCatException;
 import org.apache.hive.hcatalog.data.HCatRecord;
 import org.apache.hive.hcatalog.data.schema.HCatFieldSchema;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.google.common.collect.Multimap;
 
 public class TableDataBuilderTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private static final String DATABASE_NAME = "test_db";
   private static final String TABLE_NAME = "test_table";
   private static final String COLUMN_1 = "column_1";
@@ -167,6 +176,49 @@ public class TableDataBuilderTest {
     assertEquals(Arrays.asList((Object) "value4", "partition_value2"), row.getAll());
   }
 
+  @Test
+  public void testSpilledRowsKeepOrder() {
+    HCatTable table = table().cols(columns(COLUMN_1)).partCols(columns(PARTITION_COLUMN_1));
+
+    TableDataBuilder builder = new TableDataBuilder(table).withSpillThreshold(2);
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      rows.add(new Object[] { "value" + i, "partition_value" + (i % 2) });
+    }
+    Multimap<Map<String, String>, HCatRecord> data = builder.addRows(rows.iterator()).build();
+
+    assertEquals(5, data.size());
+    Map<String, String> partitionSpec = new HashMap<>();
+    partitionSpec.put(PARTITION_COLUMN_1, "partition_value0");
+    List<Object> values = new ArrayList<>();
+    for (HCatRecord row : data.get(partitionSpec)) {
+      values.add(row.get(0));
+    }
+    assertEquals(Arrays.asList((Object) "value0", "value2", "value4"), values);
+
+    builder.clear();
+    assertEquals(0, builder.build().size());
+  }
+
+  @Test
+  public void testAddRowsFromDirectory() throws IOException {
+    HCatTable table = table().cols(columns(COLUMN_1));
+    File directory = temp.newFolder("data");
+    Files.write(new File(directory, "b.tsv").toPath(), "value3\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(directory, "a.tsv").toPath(), "value1\nvalue2\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(directory, "_SUCCESS").toPath(), new byte[0]);
+
+    Multimap<Map<String, String>, HCatRecord> data = new TableDataBuilder(table)
+        .addRowsFrom(directory, new TsvFileParser())
+        .build();
+
+    List<Object> values = new ArrayList<>();
+    for (HCatRecord row : data.values()) {
+      values.add(row.get(0));
+    }
+    assertEquals(Arrays.asList((Object) "value1", "value2", "value3"), values);
+  }
+
   private static HCatTable table() {
     return new HCatTable(DATABASE_NAME, TABLE_NAME);
   }
@@ -72,4 +72,65 @@ public class TableDataInserterTest {
     assertEquals("2015-10-15", result.get(3).split("\t")[2]);
   }
 
+  @Test
+  public void appendsRowsToExistingPartition() {
+    TableDataInserter inserter = new TableDataInserter(TEST_DB, TEST_TABLE, hiveShell.getHiveConf());
+    inserter.insert(ImmutableMultimap.<Map<String, String>, HCatRecord> of(
+        of("local_date", "2015-10-14"), new DefaultHCatRecord(asList((Object) "aa", "bb"))));
+    inserter.insert(ImmutableMultimap.<Map<String, String>, HCatRecord> of(
+        of("local_date", "2015-10-14"), new DefaultHCatRecord(asList((Object) "cc", "dd"))));
+
+    List<String> result = hiveShell.executeQuery("select a from testdb.test_table");
+    Collections.sort(result);
+    assertEquals(asList("aa", "cc"), result);
+    assertEquals(asList("local_date=2015-10-14"), hiveShell.executeQuery("show partitions testdb.test_table"));
+  }
+
+  @Test
+  public void appendsRowsToExistingPartitionInItsOwnFileFormat() {
+    TableDataInserter inserter = new TableDataInserter(TEST_DB, TEST_TABLE, hiveShell.getHiveConf());
+    inserter.insert(ImmutableMultimap.<Map<String, String>, HCatRecord> of(
+        of("local_date", "2015-10-14"), new DefaultHCatRecord(asList((Object) "aa", "bb"))));
+    hiveShell.execute("alter table testdb.test_table set fileformat textfile");
+    inserter.insert(ImmutableMultimap.<Map<String, String>, HCatRecord> of(
+        of("local_date", "2015-10-14"), new DefaultHCatRecord(asList((Object) "cc", "dd")),
+        of("local_date", "2015-10-15"), new DefaultHCatRecord(asList((Object) "ee", "ff"))));
+
+    List<String> result = hiveShell.executeQuery("select a from testdb.test_table");
+    Collections.sort(result);
+    assertEquals(asList("aa", "cc", "ee"), result);
+  }
+
+  @Test
+  public void insertsPartitionsConcurrently() {
+    ImmutableMultimap.Builder<Map<String, String>, HCatRecord> data = ImmutableMultimap.builder();
+    for (int day = 10; day < 30; day++) {
+      for (int i = 0; i < 100; i++) {
+        data.put(of("local_date", "2015-10-" + day), new DefaultHCatRecord(asList((Object) ("a" + i), "b")));
+      }
+    }
+
+    new TableDataInserter(TEST_DB, TEST_TABLE, hiveShell.getHiveConf(), 4).insert(data.build());
+
+    assertEquals(20, hiveShell.executeQuery("show partitions testdb.test_table").size());
+    assertEquals(asList("2015-10-10\t100", "2015-10-29\t100"), hiveShell.executeQuery(
+        "select local_date, count(*) from testdb.test_table where local_date in ('2015-10-10', '2015-10-29') "
+        + "group by local_date order by local_date"));
+  }
+
+  @Test
+  public void insertsManyRowsIntoUnpartitionedTable() {
+    hiveShell.execute("create table testdb.big_table (id INT, name STRING)");
+    ImmutableMultimap.Builder<Map<String, String>, HCatRecord> data = ImmutableMultimap.builder();
+    Map<String, String> noPartition = Collections.emptyMap();
+    for (int i = 0; i < 100000; i++) {
+      data.put(noPartition, new DefaultHCatRecord(asList((Object) i, "name" + i)));
+    }
+
+    new TableDataInserter(TEST_DB, "big_table", hiveShell.getHiveConf()).insert(data.build());
+
+    assertEquals(asList("100000\t4999950000"),
+        hiveShell.executeQuery("select count(*), sum(id) from testdb.big_table"));
+  }
+
 }
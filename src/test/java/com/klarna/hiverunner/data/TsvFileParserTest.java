@@ -2,16 +2,29 @@ package com.klarna.hiverunner.data;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.klarna.hiverunner.CloseableIterator;
 
 public class TsvFileParserTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   @Test
   public void parsesTsv() {
     File dataFile = new File("src/test/resources/data/data.tsv");
@@ -86,4 +99,113 @@ public class TsvFileParserTest {
     assertArrayEquals(new String[] { "a1", "b1", "c1", "d1", null }, result.get(0));
     assertArrayEquals(new String[] { "a2", "b2", null, "d2", "e2" }, result.get(1));
   }
+
+  @Test
+  public void gzipTsvWithHeader() {
+    File dataFile = new File("src/test/resources/data/dataWithHeader.tsv.gz");
+    TsvFileParser tsvFileParser = new TsvFileParser().withHeader();
+
+    assertEquals(tsvFileParser.getColumnNames(dataFile), Arrays.asList("a", "b", "c", "d", "e"));
+
+    List<Object[]> result = tsvFileParser.parse(dataFile, null, Arrays.asList("a", "b", "c", "d", "e"));
+    assertEquals(2, result.size());
+    assertArrayEquals(new String[] { "a1", "b1", "c1", "d1", "e1" }, result.get(0));
+    assertArrayEquals(new String[] { "a2", "b2", "c2", "d2", "e2" }, result.get(1));
+  }
+
+  @Test
+  public void iteratesTsv() {
+    File dataFile = new File("src/test/resources/data/data.tsv");
+    TsvFileParser tsvFileParser = new TsvFileParser();
+    try (CloseableIterator<Object[]> rows = tsvFileParser.iterate(dataFile, null, Arrays.asList("a", "b"))) {
+      assertArrayEquals(new String[] { "a1", "b1" }, rows.next());
+      assertArrayEquals(new String[] { "a2", "b2" }, rows.next());
+      assertFalse(rows.hasNext());
+    }
+  }
+
+  @Test
+  public void parsesWithMultiCharacterDelimiter() throws IOException {
+    File dataFile = temp.newFile("data.txt");
+    Files.write(dataFile.toPath(), "a1::b1::\n::b2::c2\n".getBytes(StandardCharsets.UTF_8));
+    TsvFileParser tsvFileParser = new TsvFileParser().withDelimiter("::");
+    List<Object[]> result = tsvFileParser.parse(dataFile, null, Arrays.asList("a", "b", "c"));
+    assertEquals(2, result.size());
+    assertArrayEquals(new String[] { "a1", "b1", null }, result.get(0));
+    assertArrayEquals(new String[] { null, "b2", "c2" }, result.get(1));
+  }
+
+  @Test
+  public void parsesChunksInParallelInFileOrder() throws IOException {
+    File dataFile = temp.newFile("big.tsv");
+    StringBuilder data = new StringBuilder("a\tb\n");
+    for (int i = 0; i < 1000; i++) {
+      data.append("a").append(i).append("\t").append(i % 3 == 0 ? "" : "b" + i).append(i % 2 == 0 ? "\r\n" : "\n");
+    }
+    Files.write(dataFile.toPath(), data.toString().getBytes(StandardCharsets.UTF_8));
+
+    List<Object[]> expected = new TsvFileParser().withHeader().parse(dataFile, null, Arrays.asList("a", "b"));
+    List<Object[]> result = new TsvFileParser().withHeader().withParallelism(4).withChunkSize(100)
+        .parse(dataFile, null, Arrays.asList("a", "b"));
+
+    assertEquals(1000, result.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertArrayEquals(expected.get(i), result.get(i));
+    }
+  }
+
+  @Test
+  public void parsesChunksInParallelWithTheLineBreaksOfTheSequentialParser() throws IOException {
+    File dataFile = temp.newFile("breaks.tsv");
+    String[] lineBreaks = { "\n", "\r\n", "\r" };
+    StringBuilder data = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      data.append("a").append(i).append("\t").append(i % 7 == 0 ? "" : "b" + i);
+      data.append(lineBreaks[i % lineBreaks.length]);
+    }
+    Files.write(dataFile.toPath(), data.toString().getBytes(StandardCharsets.UTF_8));
+
+    List<Object[]> expected = new TsvFileParser().parse(dataFile, null, Arrays.asList("a", "b"));
+    for (int chunkSize = 1; chunkSize <= 16; chunkSize++) {
+      List<Object[]> result = new TsvFileParser().withParallelism(4).withChunkSize(chunkSize)
+          .parse(dataFile, null, Arrays.asList("a", "b"));
+
+      assertEquals(expected.size(), result.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertArrayEquals(expected.get(i), result.get(i));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void chunkSizeMustBePositive() {
+    new TsvFileParser().withChunkSize(0);
+  }
+
+  @Test
+  public void parsesChunksInParallelUnordered() throws IOException {
+    File dataFile = temp.newFile("big.tsv");
+    StringBuilder data = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      data.append(i).append("\n");
+    }
+    Files.write(dataFile.toPath(), data.toString().getBytes(StandardCharsets.UTF_8));
+
+    List<Object[]> result = new TsvFileParser().withParallelism(4).withChunkSize(64).withUnorderedRows()
+        .parse(dataFile, null, Arrays.asList("a"));
+
+    Set<Object> values = new HashSet<>();
+    for (Object[] row : result) {
+      values.add(row[0]);
+    }
+    assertEquals(1000, result.size());
+    assertEquals(1000, values.size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void parsesChunksInParallelNotEnoughFieldsInFile() {
+    File dataFile = new File("src/test/resources/data/data.tsv");
+    new TsvFileParser().withParallelism(2).withChunkSize(8)
+        .parse(dataFile, null, Arrays.asList("a", "b", "c", "d", "e", "f"));
+  }
 }
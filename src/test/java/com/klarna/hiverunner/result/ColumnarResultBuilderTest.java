@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.klarna.hiverunner.result;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hive.service.cli.ColumnBasedSet;
+import org.apache.hive.service.cli.RowSet;
+import org.apache.hive.service.cli.TableSchema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ColumnarResultBuilderTest {
+
+    private final TableSchema schema = new TableSchema(Arrays.asList(
+            new FieldSchema("id", "bigint", null),
+            new FieldSchema("score", "double", null),
+            new FieldSchema("flag", "boolean", null),
+            new FieldSchema("name", "string", null)));
+
+    @Test
+    public void pagesShouldBeAppendedColumnByColumn() {
+        ColumnarResultBuilder builder = new ColumnarResultBuilder(schema);
+        builder.append(page(new Object[]{1L, 1.5, true, "a"}, new Object[]{2L, null, false, "b"}));
+        builder.append(page(new Object[]{null, 3.5, null, "a"}));
+        ColumnarResult result = builder.build();
+
+        Assert.assertEquals(3, result.getRowCount());
+        Assert.assertEquals(4, result.getColumnCount());
+
+        LongColumn id = result.getColumn("ID", LongColumn.class);
+        Assert.assertArrayEquals(new long[]{1, 2, 0}, id.getValues());
+        Assert.assertTrue(id.isNull(2));
+        Assert.assertNull(id.get(2));
+
+        DoubleColumn score = result.getColumn("score", DoubleColumn.class);
+        Assert.assertArrayEquals(new double[]{1.5, 0, 3.5}, score.getValues(), 0);
+        Assert.assertTrue(score.isNull(1));
+
+        BooleanColumn flag = result.getColumn("flag", BooleanColumn.class);
+        Assert.assertTrue(flag.getBoolean(0));
+        Assert.assertFalse(flag.isNull(1));
+        Assert.assertTrue(flag.isNull(2));
+
+        StringColumn name = result.getColumn("name", StringColumn.class);
+        Assert.assertEquals(Arrays.asList("a", "b"), name.getDictionary());
+        Assert.assertArrayEquals(new int[]{0, 1, 0}, name.getCodes());
+        Assert.assertEquals("a", name.getString(2));
+
+        Assert.assertArrayEquals(new Object[]{2L, null, false, "b"}, result.getRow(1));
+    }
+
+    @Test
+    public void nullStringsShouldHaveNullCode() {
+        ColumnarResultBuilder builder = new ColumnarResultBuilder(schema);
+        builder.append(page(new Object[]{1L, 1.0, true, null}));
+
+        StringColumn name = builder.build().getColumn("name", StringColumn.class);
+        Assert.assertEquals(StringColumn.NULL_CODE, name.getCode(0));
+        Assert.assertNull(name.getString(0));
+        Assert.assertTrue(name.getDictionary().isEmpty());
+    }
+
+    @Test
+    public void emptyResultShouldHaveEmptyColumns() {
+        ColumnarResult result = new ColumnarResultBuilder(schema).build();
+
+        Assert.assertEquals(0, result.getRowCount());
+        Assert.assertEquals(0, result.getColumn("id", LongColumn.class).getValues().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongColumnTypeShouldFail() {
+        new ColumnarResultBuilder(schema).build().getColumn("name", LongColumn.class);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rowOutOfBoundsShouldFail() {
+        ColumnarResultBuilder builder = new ColumnarResultBuilder(schema);
+        builder.append(page(new Object[]{1L, 1.0, true, "a"}));
+        builder.build().getColumn("id", LongColumn.class).getLong(1);
+    }
+
+    private RowSet page(Object[]... rows) {
+        RowSet page = new ColumnBasedSet(schema);
+        for (Object[] row : rows) {
+            page.addRow(row);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,97 @@
+package com.klarna.hiverunner.sql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class StatementDependenciesTest {
+
+    @Test
+    public void independentStatementsShouldHaveNoDependencies() {
+        List<Set<Integer>> dependencies = StatementDependencies.dependencies(Arrays.asList(
+                "create table foo (id int)",
+                "create table bar (id int)",
+                "create table baz as select * from source"), "default");
+
+        Assert.assertEquals(Arrays.asList(none(), none(), none()), dependencies);
+    }
+
+    @Test
+    public void statementsOnSameTableShouldDependOnEachOther() {
+        List<Set<Integer>> dependencies = StatementDependencies.dependencies(Arrays.asList(
+                "create table foo (id int)",
+                "create table bar (id int)",
+                "insert into table foo select id from source",
+                "create table baz as select f.id from foo f join default.bar b on f.id = b.id",
+                "select * from source"), "default");
+
+        Assert.assertEquals(Arrays.asList(none(), none(), on(0), on(0, 1, 2), none()), dependencies);
+    }
+
+    @Test
+    public void readersShouldNotDependOnEachOther() {
+        List<Set<Integer>> dependencies = StatementDependencies.dependencies(Arrays.asList(
+                "create table foo as select * from source",
+                "create table bar as select * from source",
+                "insert overwrite table source select * from foo"), "default");
+
+        Assert.assertEquals(Arrays.asList(none(), none(), on(0, 1)), dependencies);
+    }
+
+    @Test
+    public void barriersShouldSeparateStatements() {
+        List<Set<Integer>> dependencies = StatementDependencies.dependencies(Arrays.asList(
+                "create table foo (id int)",
+                "create table bar (id int)",
+                "set hive.exec.dynamic.partition=true",
+                "create table baz (id int)",
+                "create database qux",
+                "create table qux.foo (id int)"), "default");
+
+        Assert.assertEquals(Arrays.asList(none(), none(), on(0, 1), on(2), on(2, 3), on(4)), dependencies);
+    }
+
+    @Test
+    public void useShouldChangeDatabaseOfUnqualifiedTables() {
+        List<Set<Integer>> dependencies = StatementDependencies.dependencies(Arrays.asList(
+                "use qux",
+                "create table foo (id int)",
+                "insert into table qux.foo select 1 from source",
+                "insert into table default.foo select 1 from source"), "default");
+
+        Assert.assertEquals(Arrays.asList(none(), on(0), on(0, 1), on(0)), dependencies);
+    }
+
+    @Test
+    public void readingViewShouldReadItsTables() {
+        List<Set<Integer>> dependencies = StatementDependencies.dependencies(Arrays.asList(
+                "create view foo as select * from source",
+                "insert into table source select 1 from bar",
+                "select * from foo"), "default");
+
+        Assert.assertEquals(Arrays.asList(none(), on(0), on(0, 1)), dependencies);
+    }
+
+    @Test
+    public void writingDirectoryShouldBeBarrier() {
+        List<Set<Integer>> dependencies = StatementDependencies.dependencies(Arrays.asList(
+                "create table foo (id int)",
+                "insert overwrite directory '/tmp/foo' select * from source",
+                "create table bar (id int)"), "default");
+
+        Assert.assertEquals(Arrays.asList(none(), on(0), on(1)), dependencies);
+    }
+
+    private static Set<Integer> none() {
+        return Collections.emptySet();
+    }
+
+    private static Set<Integer> on(Integer... statements) {
+        return new HashSet<>(Arrays.asList(statements));
+    }
+}